@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.simulation.SyntheticData;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Forward-backward pass of a single read.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForwardBackwardBenchmark {
+
+    @Param({"2", "5", "10"})
+    public int K;
+    @Param({"150", "250", "500"})
+    public int length;
+    @Param({"false", "true"})
+    public boolean paired;
+    @Param({ForwardBackwardEngines.REFERENCE, ForwardBackwardEngines.VECTORIZED})
+    public String engine;
+    private JHMM jhmm;
+    private Read[] reads;
+    private ForwardBackwardEngine fb;
+    private ParallelJHMMStorage storage;
+    private ForwardBackwardWorkspace ws;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticData.configure();
+        int L = SyntheticData.genomeLength(length, paired);
+        this.reads = SyntheticData.reads(SyntheticData.haplotypes(K, L, 1), 200, length, paired, 2);
+        this.jhmm = SyntheticData.model(reads, L, K);
+        this.fb = ForwardBackwardEngines.get(engine);
+        this.storage = new ParallelJHMMStorage(L, K, SyntheticData.n, 0);
+        this.ws = new ForwardBackwardWorkspace();
+        this.ws.ensureCapacity(jhmm.getMaxReadLength(), K, SyntheticData.n);
+    }
+
+    @Benchmark
+    public double computeFB() {
+        Read read = reads[next];
+        next = (next + 1) % reads.length;
+        return fb.computeFB(jhmm, read, storage, ws);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.simulation.SyntheticData;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * M-step on fixed expected counts, i.e. maximizeRho, maximizePi, maximizeMu
+ * and maximizeEps, as well as the regularization of single rows.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MStepBenchmark {
+
+    @Param({"2", "5", "10"})
+    public int K;
+    @Param({"1000", "3000"})
+    public int L;
+    private JHMM jhmm;
+    private double[] counts;
+    private double[] prior;
+
+    @Setup
+    public void setUp() {
+        SyntheticData.configure();
+        this.jhmm = SyntheticData.model(SyntheticData.reads(SyntheticData.haplotypes(K, L, 1), 20 * L / 250, 250, false, 2), L, K);
+        this.counts = new double[SyntheticData.n];
+        for (int v = 0; v < counts.length; v++) {
+            counts[v] = v == 0 ? 95 : 1;
+        }
+        this.prior = new double[SyntheticData.n];
+        for (int v = 0; v < prior.length; v++) {
+            prior[v] = 1e-4;
+        }
+    }
+
+    @Benchmark
+    public JHMMParams mStep() {
+        jhmm.mStep();
+        return jhmm.getParams();
+    }
+
+    @Benchmark
+    public double[] regularizeOnce() {
+        return Regularizations.regularizeOnce(counts, 0, prior, 100, jhmm.getMemo());
+    }
+
+    @Benchmark
+    public double[] regularizeOnceRho() {
+        return Regularizations.regularizeOnceRho(0, counts, 0, prior, 1000, jhmm.getMemo());
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm.parallel;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reduction of the per-thread expected counts into the global count arrays.
+ * The coverage determines the fraction of positions each worker storage has
+ * written to.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpectedCountsReductionBenchmark {
+
+    private static final int n = 5;
+    @Param({"1", "4", "16"})
+    public int workers;
+    @Param({"1000", "9000"})
+    public int L;
+    @Param({"2", "10"})
+    public int K;
+    @Param({"0.1", "1.0"})
+    public double coverage;
+    private ParallelJHMMStorage[] stores;
+    private double[][][] nJKL;
+    private double[][][] nJKV;
+    private double[] nneqPos;
+
+    @Setup
+    public void setUp() {
+        Random rand = new Random(1);
+        this.stores = new ParallelJHMMStorage[workers];
+        int span = Math.max(1, (int) (coverage * L));
+        for (int w = 0; w < workers; w++) {
+            ParallelJHMMStorage store = new ParallelJHMMStorage(L, K, n, w);
+            int begin = rand.nextInt(L - span + 1);
+            store.markSpan(begin, begin + span);
+            for (int j = begin; j < begin + span; j++) {
+                for (int k = 0; k < K; k++) {
+                    for (int v = 0; v < n; v++) {
+                        store.addnJKV(j, k, v, rand.nextDouble());
+                    }
+                    for (int l = 0; l < K; l++) {
+                        store.addnJKL(j, k, l, rand.nextDouble());
+                    }
+                }
+                store.addnneqPos(j, rand.nextDouble());
+            }
+            stores[w] = store;
+        }
+        this.nJKL = new double[L][K][K];
+        this.nJKV = new double[L][K][n];
+        this.nneqPos = new double[L];
+    }
+
+    @Benchmark
+    public double[][][] reduce() {
+        Globals.getINSTANCE().getFjPool().invoke(new ExpectedCountsReduction(stores, nJKL, nJKV, nneqPos, 0, L));
+        return nJKV;
+    }
+}
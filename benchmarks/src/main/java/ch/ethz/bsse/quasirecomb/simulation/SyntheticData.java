@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.simulation;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.model.hmm.JHMM;
+import java.io.File;
+import java.util.Random;
+import org.javatuples.Pair;
+
+/**
+ * Offline input for the benchmarks. Haplotypes are random, reads are drawn
+ * from them with {@link CallableSimulator}.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class SyntheticData {
+
+    public static final int n = 5;
+    /**
+     * Errors are drawn among the nucleotides only, gaps would shorten the
+     * simulated watson read.
+     */
+    private static final int ERROR_ALPHABET = 4;
+    public static final double EPSILON = 0.005;
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    /**
+     * Sets the global parameters to the defaults of a training run and
+     * redirects all output into a temporary directory.
+     */
+    public static void configure() {
+        Globals.getINSTANCE().setSTORAGE(true);
+        Globals.getINSTANCE().setPRINT(false);
+        Globals.getINSTANCE().setSILENT(true);
+        Globals.getINSTANCE().setSTEPS(2);
+        Globals.getINSTANCE().setALPHA_H(1e-4);
+        Globals.getINSTANCE().setALPHA_Z(1e-4);
+        Globals.getINSTANCE().setMULT_MU(100);
+        Globals.getINSTANCE().setMULT_RHO(1000);
+        Globals.getINSTANCE().setINTERPOLATE_MU(1);
+        Globals.getINSTANCE().setINTERPOLATE_RHO(1);
+        Globals.getINSTANCE().setPCHANGE(1e-10);
+        Globals.getINSTANCE().setSPIKERHO(true);
+        Globals.getINSTANCE().setMAX_DEL(Integer.MAX_VALUE);
+        Globals.getINSTANCE().setMAX_OVERALL_DEL(1);
+        Globals.getINSTANCE().setSAVEPATH(System.getProperty("java.io.tmpdir") + File.separator);
+    }
+
+    public static String[] haplotypes(int K, int L, long seed) {
+        Random rand = new Random(seed);
+        String[] haplotypes = new String[K];
+        for (int k = 0; k < K; k++) {
+            StringBuilder sb = new StringBuilder(L);
+            for (int j = 0; j < L; j++) {
+                sb.append(BASES[rand.nextInt(BASES.length)]);
+            }
+            haplotypes[k] = sb.toString();
+        }
+        return haplotypes;
+    }
+
+    /**
+     * @return length of the genome that is needed to draw reads of the given
+     * length
+     */
+    public static int genomeLength(int length, boolean paired) {
+        return paired ? 3 * length + 100 : length + 100;
+    }
+
+    /**
+     * Draws N reads uniformly from the haplotypes. Paired reads consist of two
+     * mates of the given length, separated by an insert of half that length.
+     */
+    public static Read[] reads(String[] haplotypes, int N, int length, boolean paired, long seed) {
+        Random rand = new Random(seed);
+        int L = haplotypes[0].length();
+        int insert = paired ? length / 2 : 0;
+        int fragment = paired ? 2 * length + insert : length;
+        Read[] reads = new Read[N];
+        for (int i = 0; i < N; i++) {
+            int hap = rand.nextInt(haplotypes.length);
+            int start = rand.nextInt(L - fragment + 1);
+            int start2 = paired ? start + length + insert : start;
+            try {
+                Pair<Read, Read> pair = new CallableSimulator(length, EPSILON, ERROR_ALPHABET, haplotypes, hap, start, start2).call();
+                Read watson = pair.getValue0();
+                if (paired) {
+                    Read crick = pair.getValue1();
+                    reads[i] = new Read(watson.getSequence(), watson.getBegin(), watson.getEnd(), watson.getWatsonCigar(),
+                            crick.getSequence(), crick.getBegin(), crick.getEnd(), crick.getWatsonCigar());
+                } else {
+                    reads[i] = watson;
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return reads;
+    }
+
+    /**
+     * @return a model with K generators after its first EM iteration
+     */
+    public static JHMM model(Read[] reads, int L, int K) {
+        Globals.getINSTANCE().setTAU_OMEGA(reads, L);
+        return new JHMM(reads, reads.length, L, K, n, 0.001, K, 1);
+    }
+}
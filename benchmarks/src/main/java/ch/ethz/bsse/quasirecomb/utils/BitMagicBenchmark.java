@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.utils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of a read into 3-bit words, random access to its bases and bulk
+ * decoding.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitMagicBenchmark {
+
+    @Param({"150", "250", "500"})
+    public int length;
+    private byte[] bases;
+    private long[] packed;
+    private byte[] decoded;
+
+    @Setup
+    public void setUp() {
+        Random rand = new Random(1);
+        this.bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = (byte) rand.nextInt(5);
+        }
+        this.packed = BitMagic.encode(bases);
+        this.decoded = new byte[length];
+    }
+
+    @Benchmark
+    public long[] encode() {
+        return BitMagic.encode(bases);
+    }
+
+    @Benchmark
+    public int getPosition() {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += BitMagic.getPosition(packed, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        BitMagic.decode(packed, 0, length, decoded, 0);
+        return decoded;
+    }
+}
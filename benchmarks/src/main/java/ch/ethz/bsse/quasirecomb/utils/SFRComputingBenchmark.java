@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.utils;
+
+import ch.ethz.bsse.quasirecomb.informationholder.ReadTMP;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Projection of aligned records onto the reference. Measured via
+ * {@link SFRComputing#call()}, which converts each record on its own.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SFRComputingBenchmark {
+
+    private static final int RECORDS = 1000;
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    @Param({"250"})
+    public int length;
+    @Param({"false", "true"})
+    public boolean indels;
+    private List<SAMRecord> records;
+
+    @Setup
+    public void setUp() {
+        Random rand = new Random(1);
+        SAMFileHeader header = new SAMFileHeader();
+        this.records = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            SAMRecord record = new SAMRecord(header);
+            int clip = indels ? 10 : 0;
+            int insertion = indels ? 2 : 0;
+            byte[] bases = new byte[length];
+            byte[] qualities = new byte[length];
+            for (int j = 0; j < length; j++) {
+                bases[j] = BASES[rand.nextInt(BASES.length)];
+                qualities[j] = (byte) (20 + rand.nextInt(20));
+            }
+            record.setReadName("r" + i);
+            record.setReadBases(bases);
+            record.setBaseQualities(qualities);
+            if (indels) {
+                int head = (length - clip - insertion) / 2;
+                int tail = length - clip - insertion - head;
+                record.setCigarString(clip + "S" + head + "M3D" + insertion + "I" + tail + "M");
+            } else {
+                record.setCigarString(length + "M");
+            }
+            record.setAlignmentStart(1 + rand.nextInt(1000));
+            records.add(record);
+        }
+    }
+
+    @Benchmark
+    public List<ReadTMP> call() {
+        return new SFRComputing(records).call();
+    }
+}
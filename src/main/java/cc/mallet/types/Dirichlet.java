@@ -168,8 +168,12 @@ public class Dirichlet {
 	}
 
 	public double[] nextDistribution() {
-		double distribution[] = new double[partition.length];
 		initRandom();
+		return nextDistribution(random);
+	}
+
+	public double[] nextDistribution(Randoms random) {
+		double distribution[] = new double[partition.length];
 
 //		For each dimension, draw a sample from Gamma(mp_i, 1)
 		double sum = 0;
@@ -22,21 +22,22 @@ import ch.ethz.bsse.quasirecomb.distance.HammerWorker;
 import ch.ethz.bsse.quasirecomb.distance.IntersectQuasispecies;
 import ch.ethz.bsse.quasirecomb.informationholder.Globals;
 import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
+import ch.ethz.bsse.quasirecomb.informationholder.Threading;
 import ch.ethz.bsse.quasirecomb.model.Preprocessing;
+import ch.ethz.bsse.quasirecomb.model.hmm.ForwardBackwardEngines;
 import ch.ethz.bsse.quasirecomb.modelsampling.ModelSampling;
 import ch.ethz.bsse.quasirecomb.simulation.Recombinator;
 import ch.ethz.bsse.quasirecomb.simulation.Simulator;
 import ch.ethz.bsse.quasirecomb.utils.CutNHam;
 import ch.ethz.bsse.quasirecomb.utils.Cutter;
 import ch.ethz.bsse.quasirecomb.utils.FastaParser;
+import ch.ethz.bsse.quasirecomb.utils.OptimumIO;
 import ch.ethz.bsse.quasirecomb.utils.StatusUpdate;
 import ch.ethz.bsse.quasirecomb.utils.Summary;
 import ch.ethz.bsse.quasirecomb.utils.Utils;
 import com.google.common.collect.Collections2;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -151,6 +152,12 @@ public class Startup {
     private boolean snapshots;
     @Option(name = "-minmem")
     private boolean minmem;
+    @Option(name = "-compressOptimum")
+    private boolean compressOptimum;
+    @Option(name = "-checkpoint")
+    private int checkpoint;
+    @Option(name = "-resume")
+    private String resume;
     @Option(name = "-plot")
     private boolean plot;
     @Option(name = "-debug")
@@ -243,8 +250,33 @@ public class Startup {
     private int subSample;
     @Option(name = "-subsample")
     private double subSamplePerc;
+    @Option(name = "-engine")
+    private String engine = ForwardBackwardEngines.REFERENCE;
+    @Option(name = "-engineCheck")
+    private boolean engineCheck;
+    @Option(name = "-threads")
+    private int threads = Runtime.getRuntime().availableProcessors();
+    @Option(name = "-parallelRestarts")
+    private int parallelRestarts = 1;
+    @Option(name = "-lookahead")
+    private int lookahead = 0;
+    @Option(name = "-squarem")
+    private boolean squarem;
+    @Option(name = "-race")
+    private boolean race;
+    @Option(name = "-raceMargin")
+    private double raceMargin = 0.01;
+    @Option(name = "-warmStart")
+    private boolean warmStart;
+    @Option(name = "-warmRandom")
+    private double warmRandom = 0.25;
+    @Option(name = "-seed")
+    private Long seed;
 
     private void setInputOutput() {
+        if (output == null && resume != null) {
+            this.output = resume.endsWith("/") || resume.endsWith("\\") ? resume : resume + File.separator;
+        }
         if (output == null) {
             this.output = System.getProperty("user.dir") + File.separator;
         } else {
@@ -259,10 +291,26 @@ public class Startup {
         }
     }
 
-    private void setMainParameters() {
+    private void setMainParameters() throws CmdLineException {
+        try {
+            Threading.getINSTANCE().configure(this.threads);
+        } catch (IllegalArgumentException ex) {
+            throw new CmdLineException(ex.getMessage());
+        }
         Globals.getINSTANCE().setSILENT(this.silent);
         Globals.getINSTANCE().setSTORAGE(!this.minmem);
         Globals.getINSTANCE().setSNAPSHOTS(this.snapshots);
+        Globals.getINSTANCE().setCOMPRESS_OPTIMUM(this.compressOptimum);
+        if (this.checkpoint < 0) {
+            throw new CmdLineException("-checkpoint must not be negative");
+        }
+        Globals.getINSTANCE().setCHECKPOINT(this.checkpoint);
+        if (this.resume != null) {
+            if (!new File(this.resume).isDirectory()) {
+                throw new CmdLineException("-resume has to be the output directory of a previous run");
+            }
+            Globals.getINSTANCE().setRESUME(this.resume.endsWith("/") || this.resume.endsWith("\\") ? this.resume : this.resume + File.separator);
+        }
         Globals.getINSTANCE().setDEBUG(this.verbose || this.debug);
         Globals.getINSTANCE().setPRINT(this.print || this.debug);
         Globals.getINSTANCE().setLOGGING(this.log);
@@ -435,10 +483,7 @@ public class Startup {
     private void html() {
         OptimalResult or = null;
         try {
-            FileInputStream fis = new FileInputStream(input);
-            try (ObjectInputStream in = new ObjectInputStream(fis)) {
-                or = (OptimalResult) in.readObject();
-            }
+            or = OptimumIO.read(input);
         } catch (IOException | ClassNotFoundException ex) {
             System.err.println(ex);
         }
@@ -451,10 +496,7 @@ public class Startup {
     private void summary() {
         OptimalResult or = null;
         try {
-            FileInputStream fis = new FileInputStream(input);
-            try (ObjectInputStream in = new ObjectInputStream(fis)) {
-                or = (OptimalResult) in.readObject();
-            }
+            or = OptimumIO.read(input);
         } catch (IOException | ClassNotFoundException ex) {
             System.err.println(ex);
         }
@@ -874,6 +916,33 @@ public class Startup {
         Globals.getINSTANCE().setSUBSAMPLE(this.subSample > 0);
         Globals.getINSTANCE().setSUBSAMPLE_COUNT(this.subSample);
         Globals.getINSTANCE().setSUB_SAMPLE_PERC(this.subSamplePerc);
+        try {
+            ForwardBackwardEngines.get(this.engine);
+        } catch (IllegalArgumentException ex) {
+            throw new CmdLineException(ex.getMessage());
+        }
+        Globals.getINSTANCE().setENGINE(this.engine);
+        Globals.getINSTANCE().setENGINE_CHECK(this.engineCheck);
+        if (this.parallelRestarts < 1) {
+            throw new CmdLineException("-parallelRestarts has to be positive");
+        }
+        Globals.getINSTANCE().setPARALLEL_RESTARTS(this.parallelRestarts);
+        if (this.lookahead < 0) {
+            throw new CmdLineException("-lookahead must not be negative");
+        }
+        Globals.getINSTANCE().setLOOKAHEAD(this.lookahead);
+        Globals.getINSTANCE().setSEED(this.seed);
+        Globals.getINSTANCE().setSQUAREM(this.squarem);
+        if (this.raceMargin < 0) {
+            throw new CmdLineException("-raceMargin must not be negative");
+        }
+        Globals.getINSTANCE().setRACE(this.race);
+        Globals.getINSTANCE().setRACE_MARGIN(this.raceMargin);
+        if (this.warmRandom < 0 || this.warmRandom > 1) {
+            throw new CmdLineException("-warmRandom must be between 0 and 1");
+        }
+        Globals.getINSTANCE().setWARM_START(this.warmStart);
+        Globals.getINSTANCE().setWARM_RANDOM(this.warmRandom);
         Preprocessing.workflow(this.input, Kmin, Kmax);
     }
 
@@ -946,7 +1015,8 @@ public class Startup {
                     + "\n\t\t\t  In case of no input, K will be incremented as long as max BIC has not been reached, but will stop at K=5.");
             System.err.println("  -m INT\t\t: The number of EM restarts during model selection (default: 5).");
             System.err.println("  -t INT\t\t: The number of EM restarts for best K to find optimum (default: 50).");
-            System.err.println("  -r INT-INT\t\t: Only reconstruct a specific region.");
+            System.err.println("  -r INT-INT\t\t: Only reconstruct a specific region."
+                    + "\n\t\t\t  With a BAM index (.bai) only reads overlapping the region are parsed.");
             System.err.println("  -noRecomb\t\t: Do not allow recombination.");
             System.err.println("  -quality\t\t: Account phred quality scores (slower runtime).");
             System.err.println("  -printAlignment\t: Save alignment.txt in a human readable format.");
@@ -968,6 +1038,20 @@ public class Startup {
             System.err.println("  -Xms2G -Xmx10G\t: Increase heap space.");
             System.err.println("  -XX:+UseParallelGC\t: Enhances performance on multicore systems.");
             System.err.println("  -XX:+UseNUMA\t\t: Enhances performance on multi-CPU systems.");
+            System.err.println("  -engine NAME\t\t: Forward-backward implementation, reference (default) or vectorized.");
+            System.err.println("  -engineCheck\t\t: Verify that the selected engine agrees with the reference engine before training.");
+            System.err.println("  -threads INT\t\t: Maximal number of threads, default all available processors.");
+            System.err.println("  -parallelRestarts INT\t: Number of EM restarts that run at once within the thread budget, default 1.");
+            System.err.println("  -lookahead INT\t\t: Number of larger K evaluated speculatively during model selection, e.g. 1 or 2, default 0.");
+            System.err.println("  -squarem\t\t: Experimental, squared extrapolation (SQUAREM) of the EM.");
+            System.err.println("  -race\t\t\t: Stop restarts whose projected BIC cannot beat the best finished restart.");
+            System.err.println("  -raceMargin DOUBLE\t: Relative confidence margin of -race, default 0.01.");
+            System.err.println("  -warmStart\t\t: Initialize K+1 during model selection by splitting a generator of the best K.");
+            System.err.println("  -warmRandom DOUBLE\t: Fraction of restarts of -warmStart with random initialization, default 0.25.");
+            System.err.println("  -seed LONG\t\t: Seed of the random initialization and perturbation of the restarts.");
+            System.err.println("  -compressOptimum\t: Store .optimum files deflated instead of memory-mappable.");
+            System.err.println("  -checkpoint INT\t: Save finished K and restarts, and running restarts every INT seconds, for -resume.");
+            System.err.println("  -resume PATH\t\t: Continue an interrupted run from the checkpoints in its output directory.");
             System.err.println(" -------------------------");
             System.err.println(" === EXAMPLES ===");
             System.err.println("   java -XX:NewRatio=9 -jar QuasiRecomb.jar -i alignment.bam");
@@ -18,6 +18,7 @@
 package ch.ethz.bsse.quasirecomb.informationholder;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
@@ -64,7 +65,7 @@ public class Globals {
     private boolean DEBUG;
     private boolean NO_RECOMB = false;
     private boolean FORCE_NO_RECOMB = false;
-    private boolean PARALLEL_RESTARTS = false;
+    private int PARALLEL_RESTARTS = 1;
     private boolean LOG_BIC = false;
     private boolean LOGGING = false;
     private boolean PRINT = true;
@@ -75,6 +76,11 @@ public class Globals {
     private boolean ONLY_PAIRED;
     private boolean PRUNE;
     private boolean SUBSAMPLE;
+    private boolean COMPRESS_OPTIMUM;
+    private boolean WARM_START;
+    private boolean RACE;
+    private boolean SQUAREM;
+    private boolean ENGINE_CHECK;
     private double MAX_DEL;
     private double MAX_OVERALL_DEL;
     private double CUTOFF;
@@ -92,9 +98,9 @@ public class Globals {
     private double INTERPOLATE_MU;
     private double INTERPOLATE_RHO;
     private double CURRENT_DELTA_LLH = 0;
-    private double MAX_LLH = -1;
-    private double MIN_BIC = Double.MIN_VALUE;
     private double SUB_SAMPLE_PERC;
+    private double WARM_RANDOM = 0.25;
+    private double RACE_MARGIN = 0.01;
     private double[] ENTROPY;
     private int READ_MINLENGTH;
     private int WINDOW_BEGIN;
@@ -111,14 +117,17 @@ public class Globals {
     private int REPEATS;
     private int K_MIN;
     private int SUBSAMPLE_COUNT;
-    private final int cpus = Runtime.getRuntime().availableProcessors();
-    private List<Integer> runtime = new LinkedList<>();
+    private int CHECKPOINT;
+    private int LOOKAHEAD;
+    private Long SEED;
+    private List<Integer> runtime = Collections.synchronizedList(new LinkedList<Integer>());
     private String PRIOR;
     private String GENOME;
     private String OPTIMUM;
     private String SAVEPATH;
+    private String RESUME;
+    private String ENGINE = "reference";
     private StringBuilder LOG = new StringBuilder();
-    private final ForkJoinPool fjPool = new ForkJoinPool();
     private final AtomicInteger MERGED_COUNT = new AtomicInteger(0);
     private final AtomicInteger PAIRED_COUNT = new AtomicInteger(0);
     private int hammingMax = 0;
@@ -170,10 +179,6 @@ public class Globals {
         this.CURRENT_DELTA_LLH = CURRENT_DELTA_LLH;
     }
 
-    public double getMIN_BIC() {
-        return MIN_BIC;
-    }
-
     public void setPRUNE(boolean PRUNE) {
         this.PRUNE = PRUNE;
     }
@@ -262,20 +267,6 @@ public class Globals {
         return FORCE_NO_RECOMB;
     }
 
-    public synchronized double getMAX_LLH() {
-        return MAX_LLH;
-    }
-
-    public synchronized void minMIN_BIC(double bic) {
-        MIN_BIC = Math.min(MIN_BIC, bic);
-    }
-
-    public synchronized void maxMAX_LLH(double llh) {
-        if (MAX_LLH == -1 || llh > MAX_LLH) {
-            MAX_LLH = llh;
-        }
-    }
-
     public void setSTOP_QUICK(boolean STOP_QUICK) {
         this.STOP_QUICK = STOP_QUICK;
     }
@@ -325,7 +316,7 @@ public class Globals {
     }
 
     public ForkJoinPool getFjPool() {
-        return fjPool;
+        return Threading.getINSTANCE().getFjPool();
     }
 
     public boolean isDEBUG() {
@@ -344,7 +335,7 @@ public class Globals {
         return DESIRED_REPEATS;
     }
 
-    public boolean isPARALLEL_RESTARTS() {
+    public int getPARALLEL_RESTARTS() {
         return PARALLEL_RESTARTS;
     }
 
@@ -428,18 +419,10 @@ public class Globals {
         this.DESIRED_REPEATS = DESIRED_REPEATS;
     }
 
-    public void setPARALLEL_RESTARTS(boolean PARALLEL_RESTARTS) {
+    public void setPARALLEL_RESTARTS(int PARALLEL_RESTARTS) {
         this.PARALLEL_RESTARTS = PARALLEL_RESTARTS;
     }
 
-    public void setMAX_LLH(double MAX_LLH) {
-        this.MAX_LLH = MAX_LLH;
-    }
-
-    public void setMIN_BIC(double MAX_BIC) {
-        this.MIN_BIC = MAX_BIC;
-    }
-
     public void setLOG_BIC(boolean LOG_BIC) {
         this.LOG_BIC = LOG_BIC;
     }
@@ -469,7 +452,7 @@ public class Globals {
     }
 
     public int getCpus() {
-        return cpus;
+        return Threading.getINSTANCE().getThreads();
     }
 
     public boolean isSTORAGE() {
@@ -842,4 +825,100 @@ public class Globals {
     public void setSUB_SAMPLE_PERC(double SUB_SAMPLE_PERC) {
         this.SUB_SAMPLE_PERC = SUB_SAMPLE_PERC;
     }
+
+    public String getENGINE() {
+        return ENGINE;
+    }
+
+    public void setENGINE(String ENGINE) {
+        this.ENGINE = ENGINE;
+    }
+
+    public boolean isENGINE_CHECK() {
+        return ENGINE_CHECK;
+    }
+
+    public void setENGINE_CHECK(boolean ENGINE_CHECK) {
+        this.ENGINE_CHECK = ENGINE_CHECK;
+    }
+
+    public int getLOOKAHEAD() {
+        return LOOKAHEAD;
+    }
+
+    public void setLOOKAHEAD(int LOOKAHEAD) {
+        this.LOOKAHEAD = LOOKAHEAD;
+    }
+
+    public Long getSEED() {
+        return SEED;
+    }
+
+    public void setSEED(Long SEED) {
+        this.SEED = SEED;
+    }
+
+    public boolean isSQUAREM() {
+        return SQUAREM;
+    }
+
+    public void setSQUAREM(boolean SQUAREM) {
+        this.SQUAREM = SQUAREM;
+    }
+
+    public boolean isRACE() {
+        return RACE;
+    }
+
+    public void setRACE(boolean RACE) {
+        this.RACE = RACE;
+    }
+
+    public double getRACE_MARGIN() {
+        return RACE_MARGIN;
+    }
+
+    public void setRACE_MARGIN(double RACE_MARGIN) {
+        this.RACE_MARGIN = RACE_MARGIN;
+    }
+
+    public boolean isWARM_START() {
+        return WARM_START;
+    }
+
+    public void setWARM_START(boolean WARM_START) {
+        this.WARM_START = WARM_START;
+    }
+
+    public double getWARM_RANDOM() {
+        return WARM_RANDOM;
+    }
+
+    public void setWARM_RANDOM(double WARM_RANDOM) {
+        this.WARM_RANDOM = WARM_RANDOM;
+    }
+
+    public boolean isCOMPRESS_OPTIMUM() {
+        return COMPRESS_OPTIMUM;
+    }
+
+    public void setCOMPRESS_OPTIMUM(boolean COMPRESS_OPTIMUM) {
+        this.COMPRESS_OPTIMUM = COMPRESS_OPTIMUM;
+    }
+
+    public int getCHECKPOINT() {
+        return CHECKPOINT;
+    }
+
+    public void setCHECKPOINT(int CHECKPOINT) {
+        this.CHECKPOINT = CHECKPOINT;
+    }
+
+    public String getRESUME() {
+        return RESUME;
+    }
+
+    public void setRESUME(String RESUME) {
+        this.RESUME = RESUME;
+    }
 }
@@ -32,7 +32,7 @@ public class ModelSelectionStorage {
     private Map<Integer, SelectionResult> srMap = new HashMap<>();
     private int bestK;
 
-    public void add(EM em, int K) {
+    public synchronized void add(EM em, int K) {
         srMap.put(K, new SelectionResult(em.getOr(), em.getMaxBIC()));
     }
 
@@ -49,26 +49,30 @@ public class ModelSelectionStorage {
         if (maxK == Globals.getINSTANCE().getK_MIN()) {
             this.bestK = maxK;
         } else {
+            this.bestK = maxK;
             while (maxK - 1 > 0) {
                 if (srMap.containsKey(maxK - 1)) {
                     SelectionResult previous = srMap.get(maxK - 1);
                     if (srMap.get(maxK).max < previous.max) {
                         maxK--;
-                    } else {
                         this.bestK = maxK;
+                    } else {
                         break;
                     }
+                } else {
+                    //smaller K have not been evaluated
+                    break;
                 }
             }
         }
     }
 
-    public OptimalResult getBestOR() {
+    public synchronized OptimalResult getBestOR() {
         this.select();
         return this.srMap.get(bestK).or;
     }
 
-    public Multimap<Integer, Double> getMaxBICs() {
+    public synchronized Multimap<Integer, Double> getMaxBICs() {
         Multimap<Integer,Double> bics = ArrayListMultimap.create();
         for (Map.Entry<Integer, SelectionResult> entry : srMap.entrySet()) {
             SelectionResult srTmp = entry.getValue();
@@ -17,37 +17,74 @@
  */
 package ch.ethz.bsse.quasirecomb.informationholder;
 
+import java.util.Arrays;
+
 /**
+ * Expected counts of one E-step stripe. The arrays are flat and row-major,
+ * i.e. nJKL[j][k][l] is stored at (j * K + k) * K + l and nJKV[j][k][v] at
+ * (j * K + k) * n + v. A storage is allocated once per stripe of the
+ * partition plan and zeroed in place between iterations.
+ *
+ * Positions are grouped into blocks of {@link #BLOCK} positions and only blocks
+ * covered by a processed read are cleared and merged. nneqPos is small and
+ * kept dense.
+ *
  * @author Armin Töpfer (armin.toepfer [at] gmail.com)
  */
 public class ParallelJHMMStorage {
 
-    private double[][][] nJKL;
-    private double[][][] nJKV;
-    private double[] nneqPos;
-    private int id;
-    private int L, K, n;
+    public static final int BLOCK = 64;
+    private final double[] nJKL;
+    private final double[] nJKV;
+    private final double[] nneqPos;
+    private final boolean[] touched;
+    private final int id;
+    private final int L, K, n;
 
     public ParallelJHMMStorage(int L, int K, int n, int id) {
         this.L = L;
         this.K = K;
         this.n = n;
         this.id = id;
-        this.clear();
+        this.nJKL = new double[L * K * K];
+        this.nJKV = new double[L * K * n];
+        this.nneqPos = new double[L];
+        this.touched = new boolean[(L + BLOCK - 1) / BLOCK];
     }
-    
+
     public void clear() {
-        this.nJKL = new double[L][K][K];
-        this.nJKV = new double[L][K][n];
-        this.nneqPos = new double[L];
+        for (int block = 0; block < touched.length; block++) {
+            if (touched[block]) {
+                int from = block * BLOCK;
+                int to = Math.min(from + BLOCK, L);
+                Arrays.fill(this.nJKL, from * K * K, to * K * K, 0d);
+                Arrays.fill(this.nJKV, from * K * n, to * K * n, 0d);
+                touched[block] = false;
+            }
+        }
+        Arrays.fill(this.nneqPos, 0d);
+    }
+
+    /**
+     * Marks positions [from, to) as covered, has to be called before counts
+     * of a read are added.
+     */
+    public void markSpan(int from, int to) {
+        for (int block = from / BLOCK; block <= (to - 1) / BLOCK && block < touched.length; block++) {
+            touched[block] = true;
+        }
+    }
+
+    public boolean isTouched(int block) {
+        return touched[block];
     }
 
     public void addnJKV(int j, int k, int v, double value) {
-        this.nJKV[j][k][v] += value;
+        this.nJKV[(j * K + k) * n + v] += value;
     }
 
     public void addnJKL(int j, int k, int l, double value) {
-        this.nJKL[j][k][l] += value;
+        this.nJKL[(j * K + k) * K + l] += value;
     }
 
     public void addnneqPos(int j, double value) {
@@ -58,26 +95,37 @@ public class ParallelJHMMStorage {
         return id;
     }
 
-    public ParallelJHMMStorage merge(ParallelJHMMStorage t) {
-        for (int j = 0; j < nJKL.length; j++) {
-            for (int k = 0; k < nJKL[j].length; k++) {
-                for (int l = 0; l < nJKL[j][k].length; l++) {
-                    this.nJKL[j][k][l] += t.nJKL[j][k][l];
+    /**
+     * Adds the counts of positions [from, to) to the given arrays, skipping
+     * blocks that have not been covered.
+     */
+    public void addTo(int from, int to, double[][][] nJKL, double[][][] nJKV, double[] nneqPos) {
+        for (int j = from; j < to; j++) {
+            nneqPos[j] += this.nneqPos[j];
+        }
+        for (int j = from; j < to; j++) {
+            if (!touched[j / BLOCK]) {
+                j = Math.min((j / BLOCK + 1) * BLOCK, to) - 1;
+                continue;
+            }
+            for (int k = 0; k < K; k++) {
+                int jkl = (j * K + k) * K;
+                for (int l = 0; l < K; l++) {
+                    nJKL[j][k][l] += this.nJKL[jkl + l];
                 }
-                for (int v = 0; v < nJKV[j][k].length; v++) {
-                    this.nJKV[j][k][v] += t.nJKV[j][k][v];
+                int jkv = (j * K + k) * n;
+                for (int v = 0; v < n; v++) {
+                    nJKV[j][k][v] += this.nJKV[jkv + v];
                 }
             }
-            this.nneqPos[j] += t.nneqPos[j];
         }
-        return this;
     }
 
-    public double[][][] getnJKL() {
+    public double[] getnJKL() {
         return nJKL;
     }
 
-    public double[][][] getnJKV() {
+    public double[] getnJKV() {
         return nJKV;
     }
 
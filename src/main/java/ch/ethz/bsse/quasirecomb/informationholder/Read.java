@@ -21,17 +21,26 @@ import ch.ethz.bsse.quasirecomb.utils.BitMagic;
 import java.util.Arrays;
 
 /**
+ * A unique read with its multiplicity. Paired-end reads are stored as watson
+ * and crick mate, overlapping mates are merged into a single watson read.
+ *
+ * Reads are mutable while they are parsed and paired. Afterwards,
+ * {@link ReadStore} moves them into a shared arena and replaces them with
+ * read-only views; therefore, the derived accessors only use the basic
+ * accessors and not the fields. The mutators merge, rearrange, shrink and
+ * unpair work on the fields and have to be rejected by views.
+ *
  * @author Armin Töpfer (armin.toepfer [at] gmail.com)
  */
 public class Read {
 
-    private byte[] watsonSequence;
+    private long[] watsonSequence;
     private double[] watsonQuality;
     private boolean[] watsonCigar;
     private int watsonBegin;
     private int watsonEnd;
     private int count = 1;
-    private byte[] crickSequence;
+    private long[] crickSequence;
     private double[] crickQuality;
     private boolean[] crickCigar;
     private int crickBegin;
@@ -39,21 +48,24 @@ public class Read {
     private int insertion;
     private boolean merged;
 
+    protected Read() {
+    }
+
     public Read(Read r) {
-        this.watsonSequence = r.watsonSequence;
-        this.watsonQuality = r.watsonQuality;
-        this.watsonCigar = r.watsonCigar;
-        this.watsonBegin = r.watsonBegin;
-        this.watsonEnd = r.watsonEnd;
-        this.crickSequence = r.crickSequence;
-        this.crickQuality = r.crickQuality;
-        this.crickCigar = r.crickCigar;
-        this.crickBegin = r.crickBegin;
-        this.insertion = r.insertion;
-        this.merged = r.merged;
-    }
-
-    public Read(byte[] sequence, int begin, int end, double[] quality, boolean[] cigar) {
+        this.watsonSequence = r.getSequence();
+        this.watsonQuality = r.getWatsonQuality();
+        this.watsonCigar = r.getWatsonCigar();
+        this.watsonBegin = r.getWatsonBegin();
+        this.watsonEnd = r.getWatsonEnd();
+        this.crickSequence = r.getCrickSequence();
+        this.crickQuality = r.getCrickQuality();
+        this.crickCigar = r.getCrickCigar();
+        this.crickBegin = r.getCrickBegin();
+        this.insertion = r.getInsertion();
+        this.merged = r.isMerged();
+    }
+
+    public Read(long[] sequence, int begin, int end, double[] quality, boolean[] cigar) {
         this.watsonSequence = sequence;
         this.watsonBegin = begin;
         this.watsonEnd = end;
@@ -61,14 +73,14 @@ public class Read {
         this.watsonCigar = cigar;
     }
 
-    public Read(byte[] sequence, int begin, int end, boolean[] cigar) {
+    public Read(long[] sequence, int begin, int end, boolean[] cigar) {
         this.watsonSequence = sequence;
         this.watsonBegin = begin;
         this.watsonEnd = end;
         this.watsonCigar = cigar;
     }
 
-    public Read(byte[] sequence, int begin, int end, boolean[] watsonCigar, byte[] Csequence, int Cbegin, int Cend, boolean[] Ccigar) {
+    public Read(long[] sequence, int begin, int end, boolean[] watsonCigar, long[] Csequence, int Cbegin, int Cend, boolean[] Ccigar) {
         this.watsonSequence = sequence;
         this.watsonBegin = begin;
         this.watsonEnd = end;
@@ -82,7 +94,7 @@ public class Read {
         }
     }
 
-    public Read(byte[] sequence, int begin, int end, double[] quality, boolean[] watsonCigar, byte[] Csequence, int Cbegin, int Cend, double[] Cquality, boolean[] Ccigar) {
+    public Read(long[] sequence, int begin, int end, double[] quality, boolean[] watsonCigar, long[] Csequence, int Cbegin, int Cend, double[] Cquality, boolean[] Ccigar) {
         this.watsonSequence = sequence;
         this.watsonBegin = begin;
         this.watsonEnd = end;
@@ -112,7 +124,7 @@ public class Read {
             cigarConsensus[i] = this.getCigar(i);
         }
         this.watsonEnd = this.crickEnd;
-        this.watsonSequence = BitMagic.pack(seqConsensus);
+        this.watsonSequence = BitMagic.encode(seqConsensus);
         this.watsonQuality = qualConsensus;
         this.watsonCigar = cigarConsensus;
         this.crickEnd = -1;
@@ -128,7 +140,7 @@ public class Read {
     }
 
     public int getBegin() {
-        return this.watsonBegin;
+        return this.getWatsonBegin();
     }
 
     public void incCount() {
@@ -140,24 +152,25 @@ public class Read {
     }
 
     public int getInsertSize() {
-        return this.crickBegin - this.watsonEnd;
+        return this.getCrickBegin() - this.getWatsonEnd();
     }
 
     public Position getPosition(int j) {
         if (j == 0) {
             return Position.WATSON_IN;
-        } else if (j < this.watsonEnd - this.watsonBegin - 1) {
+        } else if (j < this.getWatsonLength() - 1) {
             return Position.WATSON_HIT;
         } else if (j == this.getWatsonLength() - 1) {
             return Position.WATSON_OUT;
         } else if (this.isPaired()) {
+            int crickIn = this.getCrickBegin() - this.getWatsonBegin();
             if (j > this.getWatsonLength() - 1 && j < this.getWatsonLength() + this.getInsertSize()) {
                 return Position.INSERTION;
-            } else if (j == this.crickBegin - this.watsonBegin) {
+            } else if (j == crickIn) {
                 return Position.CRICK_IN;
-            } else if (j > this.crickBegin - this.watsonBegin && j < this.crickBegin + this.getCrickLength() - this.watsonBegin - 1) {
+            } else if (j > crickIn && j < crickIn + this.getCrickLength() - 1) {
                 return Position.CRICK_HIT;
-            } else if (j == this.crickBegin + this.getCrickLength() - this.watsonBegin - 1) {
+            } else if (j == crickIn + this.getCrickLength() - 1) {
                 return Position.CRICK_OUT;
             }
         }
@@ -169,30 +182,30 @@ public class Read {
             return true;
         } else if (this.isPaired() && j >= this.getWatsonLength() && j < this.getWatsonLength() + this.getInsertSize()) {
             return false;
-        } else if (this.isPaired() && j >= this.crickBegin - this.watsonBegin && j < this.crickBegin + this.getCrickLength() - this.watsonBegin) {
+        } else if (this.isPaired() && j >= this.getCrickBegin() - this.getWatsonBegin() && j < this.getCrickEnd() - this.getWatsonBegin()) {
             return true;
         } else {
-            throw new IllegalAccessError("No such sequence space for hit. j=" + j + "\tl=" + (this.crickBegin + this.getCrickLength() - this.watsonBegin));
+            throw new IllegalAccessError("No such sequence space for hit. j=" + j + "\tl=" + (this.getCrickEnd() - this.getWatsonBegin()));
         }
     }
 
     public int getLength() {
-        if (this.crickSequence != null) {
-            return this.crickEnd - this.watsonBegin;
+        if (this.isPaired()) {
+            return this.getCrickEnd() - this.getWatsonBegin();
         } else {
-            return this.watsonEnd - this.watsonBegin;
+            return this.getWatsonEnd() - this.getWatsonBegin();
         }
     }
 
     public int getEnd() {
-        if (this.crickEnd == -1) {
-            return watsonEnd;
+        if (this.getCrickEnd() == -1) {
+            return this.getWatsonEnd();
         } else {
-            return this.crickEnd;
+            return this.getCrickEnd();
         }
     }
 
-    public byte[] getSequence() {
+    public long[] getSequence() {
         return this.watsonSequence;
     }
 
@@ -240,23 +253,23 @@ public class Read {
         }
     }
 
-    public byte[] getCrickSequence() {
+    public long[] getCrickSequence() {
         return crickSequence;
     }
 
     public int getCrickLength() {
-        return this.crickEnd - this.crickBegin;
+        return this.getCrickEnd() - this.getCrickBegin();
     }
 
     public int getWatsonLength() {
-        return this.watsonEnd - this.watsonBegin;
+        return this.getWatsonEnd() - this.getWatsonBegin();
     }
 
     public boolean isPaired() {
-        return this.crickSequence != null;
+        return this.getCrickSequence() != null;
     }
 
-    public final void setPairedEnd(byte[] sequence, int begin, int end, double[] quality, boolean[] cigar) {
+    public final void setPairedEnd(long[] sequence, int begin, int end, double[] quality, boolean[] cigar) {
         this.crickSequence = sequence;
         this.crickBegin = begin;
         this.crickEnd = end;
@@ -269,7 +282,7 @@ public class Read {
         }
     }
 
-    public final void setPairedEnd(byte[] sequence, int begin, int end, boolean[] cigar) {
+    public final void setPairedEnd(long[] sequence, int begin, int end, boolean[] cigar) {
         this.crickSequence = sequence;
         this.crickBegin = begin;
         this.crickEnd = end;
@@ -300,16 +313,16 @@ public class Read {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 29 * hash + Arrays.hashCode(this.watsonSequence);
-        hash = 29 * hash + Arrays.hashCode(this.crickSequence);
-        hash = 29 * hash + this.watsonBegin;
-        hash = 29 * hash + this.watsonEnd;
-        hash = 29 * hash + this.crickBegin;
-        hash = 29 * hash + this.crickEnd;
-        hash = 29 * hash + Arrays.hashCode(this.crickQuality);
-        hash = 29 * hash + Arrays.hashCode(this.watsonQuality);
-        hash = 29 * hash + Arrays.hashCode(this.crickCigar);
-        hash = 29 * hash + Arrays.hashCode(this.watsonCigar);
+        hash = 29 * hash + Arrays.hashCode(this.getSequence());
+        hash = 29 * hash + Arrays.hashCode(this.getCrickSequence());
+        hash = 29 * hash + this.getWatsonBegin();
+        hash = 29 * hash + this.getWatsonEnd();
+        hash = 29 * hash + this.getCrickBegin();
+        hash = 29 * hash + this.getCrickEnd();
+        hash = 29 * hash + Arrays.hashCode(this.getCrickQuality());
+        hash = 29 * hash + Arrays.hashCode(this.getWatsonQuality());
+        hash = 29 * hash + Arrays.hashCode(this.getCrickCigar());
+        hash = 29 * hash + Arrays.hashCode(this.getWatsonCigar());
         return hash;
     }
 
@@ -322,7 +335,7 @@ public class Read {
         if (this.watsonBegin > this.crickBegin) {
             int beginTmp = this.watsonBegin;
             int endTmp = this.watsonEnd;
-            byte[] seqTmp = this.watsonSequence;
+            long[] seqTmp = this.watsonSequence;
             this.watsonBegin = this.crickBegin;
             this.watsonEnd = this.crickEnd;
             this.watsonSequence = this.crickSequence;
@@ -404,8 +417,8 @@ public class Read {
 
     public String watsonString() {
         StringBuilder sb = new StringBuilder();
-        sb.append(this.count).append(" ").append(this.watsonBegin).append(" ");
-        for (double d : this.watsonQuality) {
+        sb.append(this.getCount()).append(" ").append(this.getWatsonBegin()).append(" ");
+        for (double d : this.getWatsonQuality()) {
             if (d == 1.0) {
                 sb.append("J");
             } else {
@@ -413,17 +426,17 @@ public class Read {
             }
         }
         sb.append("\n");
-        sb.append(BitMagic.toString(this.watsonSequence)).append("\n");
+        sb.append(BitMagic.toString(this.getSequence())).append("\n");
         return sb.toString();
     }
 
     public String crickString() {
-        if (this.crickSequence == null) {
+        if (!this.isPaired()) {
             return null;
         }
         StringBuilder sb = new StringBuilder();
-        sb.append(this.count).append(" ").append(this.crickBegin).append(" ");
-        for (double d : this.crickQuality) {
+        sb.append(this.getCount()).append(" ").append(this.getCrickBegin()).append(" ");
+        for (double d : this.getCrickQuality()) {
             if (d == 1.0) {
                 sb.append("J");
             } else {
@@ -432,7 +445,7 @@ public class Read {
         }
         sb.append("\n");
 
-        sb.append(BitMagic.toString(this.crickSequence)).append("\n");
+        sb.append(BitMagic.toString(this.getCrickSequence())).append("\n");
         return sb.toString();
     }
 }
@@ -0,0 +1,443 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.informationholder;
+
+import ch.ethz.bsse.quasirecomb.utils.BitMagic;
+import java.util.Arrays;
+
+/**
+ * Columnar arena of the final reads. Begin, end, count and offset of every
+ * read are primitive columns, the bases, qualities and CIGARs of all reads
+ * are stored back to back in shared pages: bases with 4 bits, qualities with
+ * 1 byte and CIGAR flags with 1 bit per position. The watson mate is followed
+ * by the crick mate and a read never spans two pages, thus the E-step scans
+ * the reads in the order of the array linearly through memory.
+ *
+ * Qualities are quantised to a codebook of at most 256 levels. If the reads
+ * have at most 256 distinct qualities, as for qualities from BAM files, the
+ * codebook holds exactly these values and nothing is lost. Otherwise, the
+ * qualities are rounded to half PHRED steps.
+ *
+ * The reads are replaced by {@link View}s, which are read-only except for
+ * their count and insertion.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class ReadStore {
+
+    /**
+     * Positions per page.
+     */
+    public static final int PAGE = 1 << 26;
+    private static final int LEVELS = 256;
+    private static final byte PAIRED = 1;
+    private static final byte MERGED = 2;
+    private static final byte QUALITY = 4;
+    private final int[] watsonBegin;
+    private final int[] watsonEnd;
+    private final int[] crickBegin;
+    private final int[] crickEnd;
+    private final int[] count;
+    private final int[] insertion;
+    private final byte[] flags;
+    private final int[] page;
+    private final int[] offset;
+    private final byte[][] bases;
+    private final byte[][] qualities;
+    private final long[][] cigars;
+    private final double[] levels;
+
+    /**
+     * Moves the reads into a new store.
+     *
+     * @return views of the reads in the same order
+     */
+    public static Read[] compact(Read[] reads) {
+        ReadStore store = new ReadStore(reads);
+        Read[] views = new Read[reads.length];
+        for (int i = 0; i < reads.length; i++) {
+            views[i] = new View(store, i);
+        }
+        return views;
+    }
+
+    private ReadStore(Read[] reads) {
+        int size = reads.length;
+        watsonBegin = new int[size];
+        watsonEnd = new int[size];
+        crickBegin = new int[size];
+        crickEnd = new int[size];
+        count = new int[size];
+        insertion = new int[size];
+        flags = new byte[size];
+        page = new int[size];
+        offset = new int[size];
+
+        //layout
+        int[] pageLengths = new int[1];
+        int pages = 0;
+        int used = 0;
+        for (int i = 0; i < size; i++) {
+            Read r = reads[i];
+            int length = r.getWatsonLength() + (r.isPaired() ? r.getCrickLength() : 0);
+            if (used > 0 && (long) used + length > PAGE) {
+                pageLengths[pages++] = used;
+                used = 0;
+                if (pages == pageLengths.length) {
+                    pageLengths = Arrays.copyOf(pageLengths, pages * 2);
+                }
+            }
+            page[i] = pages;
+            offset[i] = used;
+            used += length;
+        }
+        pageLengths[pages++] = used;
+        bases = new byte[pages][];
+        qualities = new byte[pages][];
+        cigars = new long[pages][];
+        for (int p = 0; p < pages; p++) {
+            bases[p] = new byte[(pageLengths[p] + 1) / 2];
+            qualities[p] = new byte[pageLengths[p]];
+            cigars[p] = new long[(pageLengths[p] + 63) / 64];
+        }
+        levels = codebook(reads);
+
+        for (int i = 0; i < size; i++) {
+            Read r = reads[i];
+            watsonBegin[i] = r.getWatsonBegin();
+            watsonEnd[i] = r.getWatsonEnd();
+            crickBegin[i] = r.getCrickBegin();
+            crickEnd[i] = r.getCrickEnd();
+            count[i] = r.getCount();
+            insertion[i] = r.getInsertion();
+            flags[i] = (byte) ((r.isPaired() ? PAIRED : 0) | (r.isMerged() ? MERGED : 0) | (r.getWatsonQuality() != null ? QUALITY : 0));
+            int p = page[i];
+            int o = this.put(p, offset[i], r.getSequence(), r.getWatsonQuality(), r.getWatsonCigar(), r.getWatsonLength());
+            if (r.isPaired()) {
+                this.put(p, o, r.getCrickSequence(), r.getCrickQuality(), r.getCrickCigar(), r.getCrickLength());
+            }
+        }
+    }
+
+    /**
+     * @return the index of the next free position
+     */
+    private int put(int p, int o, long[] sequence, double[] quality, boolean[] cigar, int length) {
+        byte[] s = new byte[length];
+        BitMagic.decode(sequence, 0, length, s, 0);
+        byte[] b = bases[p];
+        byte[] q = qualities[p];
+        long[] c = cigars[p];
+        for (int j = 0; j < length; j++, o++) {
+            b[o >> 1] |= s[j] << ((o & 1) << 2);
+            q[o] = quality == null ? encode(1d) : encode(quality[j]);
+            if (cigar == null || cigar[j]) {
+                c[o >> 6] |= 1L << o;
+            }
+        }
+        return o;
+    }
+
+    /**
+     * @return the distinct qualities of all reads or the half PHRED steps if
+     * there are more than 256
+     */
+    private static double[] codebook(Read[] reads) {
+        //open addressing on the bits of the quality
+        long[] keys = new long[LEVELS * 2];
+        boolean[] used = new boolean[LEVELS * 2];
+        double[] distinct = new double[LEVELS];
+        int n = 0;
+        for (Read r : reads) {
+            double[][] qs = {r.getWatsonQuality(), r.isPaired() ? r.getCrickQuality() : null};
+            for (double[] q : qs) {
+                if (q == null) {
+                    q = new double[]{1d};
+                }
+                for (double d : q) {
+                    long bits = Double.doubleToLongBits(d);
+                    int slot = (int) (bits ^ (bits >>> 32)) * 0x9E3779B9 >>> 23;
+                    while (used[slot] && keys[slot] != bits) {
+                        slot = (slot + 1) & (keys.length - 1);
+                    }
+                    if (!used[slot]) {
+                        if (n == LEVELS) {
+                            return phredLevels();
+                        }
+                        used[slot] = true;
+                        keys[slot] = bits;
+                        distinct[n++] = d;
+                    }
+                }
+            }
+        }
+        double[] levels = Arrays.copyOf(distinct, n);
+        Arrays.sort(levels);
+        return levels;
+    }
+
+    /**
+     * @return 1 - 10^(-c/20) for c = 0..254 and 1
+     */
+    private static double[] phredLevels() {
+        double[] levels = new double[LEVELS];
+        for (int c = 0; c < LEVELS - 1; c++) {
+            levels[c] = 1 - Math.pow(10, -c / 20d);
+        }
+        levels[LEVELS - 1] = 1d;
+        return levels;
+    }
+
+    /**
+     * @return the code of the nearest level
+     */
+    private byte encode(double q) {
+        int i = Arrays.binarySearch(levels, q);
+        if (i >= 0) {
+            return (byte) i;
+        }
+        int above = -i - 1;
+        if (above == 0) {
+            return 0;
+        } else if (above == levels.length) {
+            return (byte) (levels.length - 1);
+        }
+        return (byte) (q - levels[above - 1] <= levels[above] - q ? above - 1 : above);
+    }
+
+    public int size() {
+        return watsonBegin.length;
+    }
+
+    /**
+     * @return the quantised quality levels
+     */
+    public double[] getLevels() {
+        return levels.clone();
+    }
+
+    /**
+     * Read-only view of a read in the store.
+     */
+    public static class View extends Read {
+
+        private final ReadStore store;
+        private final int i;
+
+        View(ReadStore store, int i) {
+            this.store = store;
+            this.i = i;
+        }
+
+        /**
+         * @return the position of j in the arena relative to the offset of
+         * the read or -1
+         */
+        private int index(int j) {
+            int watsonLength = store.watsonEnd[i] - store.watsonBegin[i];
+            if (j < watsonLength) {
+                return j;
+            }
+            if ((store.flags[i] & PAIRED) != 0) {
+                int crickIn = store.crickBegin[i] - store.watsonBegin[i];
+                if (j >= crickIn && j < store.crickEnd[i] - store.watsonBegin[i]) {
+                    return watsonLength + j - crickIn;
+                }
+            }
+            return -1;
+        }
+
+        private int checkedIndex(int j) {
+            int x = this.index(j);
+            if (x < 0) {
+                throw new IllegalAccessError("No such sequence space. j=" + j);
+            }
+            return x;
+        }
+
+        private byte base(int x) {
+            int o = store.offset[i] + x;
+            return (byte) ((store.bases[store.page[i]][o >> 1] >> ((o & 1) << 2)) & 0xF);
+        }
+
+        private double quality(int x) {
+            return store.levels[store.qualities[store.page[i]][store.offset[i] + x] & 0xFF];
+        }
+
+        private boolean cigar(int x) {
+            int o = store.offset[i] + x;
+            return (store.cigars[store.page[i]][o >> 6] & (1L << o)) != 0;
+        }
+
+        @Override
+        public byte getBase(int j) {
+            return this.base(this.checkedIndex(j));
+        }
+
+        @Override
+        public byte getBaseSilent(int j) {
+            int x = this.index(j);
+            return x < 0 ? -1 : this.base(x);
+        }
+
+        @Override
+        public double getQuality(int j) {
+            if ((store.flags[i] & QUALITY) == 0) {
+                return 1;
+            }
+            return this.quality(this.checkedIndex(j));
+        }
+
+        @Override
+        public boolean getCigar(int j) {
+            return this.cigar(this.checkedIndex(j));
+        }
+
+        @Override
+        public int getWatsonBegin() {
+            return store.watsonBegin[i];
+        }
+
+        @Override
+        public int getWatsonEnd() {
+            return store.watsonEnd[i];
+        }
+
+        @Override
+        public int getCrickBegin() {
+            return store.crickBegin[i];
+        }
+
+        @Override
+        public int getCrickEnd() {
+            return store.crickEnd[i];
+        }
+
+        @Override
+        public boolean isPaired() {
+            return (store.flags[i] & PAIRED) != 0;
+        }
+
+        @Override
+        public boolean isMerged() {
+            return (store.flags[i] & MERGED) != 0;
+        }
+
+        @Override
+        public int getCount() {
+            return store.count[i];
+        }
+
+        @Override
+        public void setCount(int count) {
+            store.count[i] = count;
+        }
+
+        @Override
+        public void incCount() {
+            store.count[i]++;
+        }
+
+        @Override
+        public int getInsertion() {
+            return store.insertion[i];
+        }
+
+        @Override
+        public void setInsertion(int insertion) {
+            store.insertion[i] = insertion;
+        }
+
+        @Override
+        public long[] getSequence() {
+            return BitMagic.encode(this.bases(0, this.getWatsonLength()));
+        }
+
+        @Override
+        public long[] getCrickSequence() {
+            return this.isPaired() ? BitMagic.encode(this.bases(this.getWatsonLength(), this.getCrickLength())) : null;
+        }
+
+        @Override
+        public double[] getWatsonQuality() {
+            return this.qualities(0, this.getWatsonLength());
+        }
+
+        @Override
+        public double[] getCrickQuality() {
+            return this.isPaired() ? this.qualities(this.getWatsonLength(), this.getCrickLength()) : null;
+        }
+
+        @Override
+        public boolean[] getWatsonCigar() {
+            return this.cigars(0, this.getWatsonLength());
+        }
+
+        @Override
+        public boolean[] getCrickCigar() {
+            return this.isPaired() ? this.cigars(this.getWatsonLength(), this.getCrickLength()) : null;
+        }
+
+        private byte[] bases(int from, int length) {
+            byte[] b = new byte[length];
+            for (int x = 0; x < length; x++) {
+                b[x] = this.base(from + x);
+            }
+            return b;
+        }
+
+        private double[] qualities(int from, int length) {
+            if ((store.flags[i] & QUALITY) == 0) {
+                return null;
+            }
+            double[] q = new double[length];
+            for (int x = 0; x < length; x++) {
+                q[x] = this.quality(from + x);
+            }
+            return q;
+        }
+
+        private boolean[] cigars(int from, int length) {
+            boolean[] c = new boolean[length];
+            for (int x = 0; x < length; x++) {
+                c[x] = this.cigar(from + x);
+            }
+            return c;
+        }
+
+        @Override
+        public void merge() {
+            throw new UnsupportedOperationException("Reads in a ReadStore are read-only.");
+        }
+
+        @Override
+        public void rearrange() {
+            throw new UnsupportedOperationException("Reads in a ReadStore are read-only.");
+        }
+
+        @Override
+        public void shrink() {
+            throw new UnsupportedOperationException("Reads in a ReadStore are read-only.");
+        }
+
+        @Override
+        public Read unpair() {
+            throw new UnsupportedOperationException("Reads in a ReadStore are read-only.");
+        }
+    }
+}
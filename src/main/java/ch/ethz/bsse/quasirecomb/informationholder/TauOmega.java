@@ -38,6 +38,13 @@ public class TauOmega implements Serializable {
         this.init(reads, L);
     }
 
+    public TauOmega(Map<Integer, Map<Integer, Double>> tauWatsonMap, Map<Integer, Map<Integer, Double>> omegaWatsonMap, Map<Integer, Map<Integer, Double>> tauCrickMap, int[] coverage) {
+        this.tauWatsonMap = tauWatsonMap;
+        this.omegaWatsonMap = omegaWatsonMap;
+        this.tauCrickMap = tauCrickMap;
+        this.coverage = coverage;
+    }
+
     private void init(Read[] reads, int L) {
         double N = Globals.getINSTANCE().getNREAL();
         this.coverage = new int[L];
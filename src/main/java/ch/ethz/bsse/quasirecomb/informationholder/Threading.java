@@ -18,47 +18,202 @@
 package ch.ethz.bsse.quasirecomb.informationholder;
 
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Threading stores objects necessary for a parallel environment.
  *
+ * The number of threads defaults to the number of available processors and
+ * can be capped with -threads. The executor runs threads - 1 workers, since
+ * the submitting thread takes part as well: the task queue holds
+ * QUEUE_PER_THREAD tasks per worker and once it is full, the submitting
+ * thread runs the task itself. This throttles producers that submit faster
+ * than the workers consume. The fork/join pool has a parallelism of threads.
+ * All threads are named daemon threads. A single writer thread persists
+ * results in the background, in the order of submission. A shutdown hook lets
+ * running tasks and pending writes finish for a short while before the pools
+ * are stopped.
+ *
  * @author Armin Töpfer (armin.toepfer [at] gmail.com)
  */
 public class Threading {
 
     private static final Threading INSTANCE = new Threading();
-    private static final BlockingQueue<Runnable> BLOCKING_QUEUE = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors() - 1);
-    private static final RejectedExecutionHandler REH = new ThreadPoolExecutor.CallerRunsPolicy();
-    private static ExecutorService EXECUTOR = refreshExecutor();
-    private static int CPU_COUNT;
+    private static final int QUEUE_PER_THREAD = 4;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private volatile int threads;
+    private volatile ThreadPoolExecutor executor;
+    private volatile ForkJoinPool fjPool;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new NamedThreadFactory("quasirecomb-writer-"));
 
     private Threading() {
-        CPU_COUNT = Runtime.getRuntime().availableProcessors();
+        this.configure(Runtime.getRuntime().availableProcessors());
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        }, "quasirecomb-shutdown"));
     }
 
     public static Threading getINSTANCE() {
         return INSTANCE;
     }
 
-    private static ExecutorService refreshExecutor() {
-        if (CPU_COUNT == 1) {
-            return Executors.newSingleThreadExecutor();
-        } else {
-            return new ThreadPoolExecutor(CPU_COUNT - 1, CPU_COUNT - 1, 5L, TimeUnit.MINUTES, BLOCKING_QUEUE, REH);
+    /**
+     * Rebuilds the pools for the given number of threads. Previous pools
+     * finish their queued tasks and terminate.
+     *
+     * @param threads maximal number of busy threads
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public synchronized void configure(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads has to be positive, but is " + threads + ".");
+        }
+        if (this.executor != null && this.threads == threads) {
+            return;
+        }
+        ExecutorService oldExecutor = this.executor;
+        ForkJoinPool oldFjPool = this.fjPool;
+        int workers = Math.max(1, threads - 1);
+        this.threads = threads;
+        this.executor = new ThreadPoolExecutor(workers, workers, 5L, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<Runnable>(QUEUE_PER_THREAD * workers),
+                new NamedThreadFactory("quasirecomb-worker-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.fjPool = new ForkJoinPool(threads, new NamedForkJoinWorkerThreadFactory("quasirecomb-fj-"), null, false);
+        if (oldExecutor != null) {
+            oldExecutor.shutdown();
+            oldFjPool.shutdown();
         }
     }
 
-    public static void renewExecutor() {
-        EXECUTOR = refreshExecutor();
+    /**
+     * Stops accepting tasks and waits up to SHUTDOWN_TIMEOUT_SECONDS for
+     * running ones, before they are interrupted.
+     */
+    public synchronized void shutdown() {
+        executor.shutdown();
+        fjPool.shutdown();
+        writer.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+            if (!fjPool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                fjPool.shutdownNow();
+            }
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            fjPool.shutdownNow();
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
     }
 
     public ExecutorService getExecutor() {
-        return EXECUTOR;
+        return executor;
+    }
+
+    public ForkJoinPool getFjPool() {
+        return fjPool;
+    }
+
+    /**
+     * @return single thread executor for background file writes
+     */
+    public ExecutorService getWriter() {
+        return writer;
+    }
+
+    /**
+     * Blocks until all writes submitted so far are done.
+     */
+    public void awaitWriter() {
+        try {
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException ex) {
+            //nothing left to wait for
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return number of tasks waiting in the executor queue and the fork/join
+     * pool
+     */
+    public long getQueueDepth() {
+        ThreadPoolExecutor e = executor;
+        ForkJoinPool f = fjPool;
+        return e.getQueue().size() + f.getQueuedSubmissionCount() + f.getQueuedTaskCount();
+    }
+
+    /**
+     * @return number of threads that currently run a task in the executor or
+     * the fork/join pool
+     */
+    public int getActiveThreads() {
+        ThreadPoolExecutor e = executor;
+        ForkJoinPool f = fjPool;
+        return e.getActiveCount() + f.getActiveThreadCount();
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    private static class NamedForkJoinWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedForkJoinWorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {
+            };
+            t.setName(prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
     }
 }
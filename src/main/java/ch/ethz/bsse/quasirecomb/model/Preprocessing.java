@@ -22,6 +22,8 @@ import ch.ethz.bsse.quasirecomb.informationholder.Globals;
 import ch.ethz.bsse.quasirecomb.informationholder.ModelSelectionBootstrapStorage;
 import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
 import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.informationholder.ReadStore;
+import ch.ethz.bsse.quasirecomb.informationholder.Threading;
 import ch.ethz.bsse.quasirecomb.model.hmm.ModelSelection;
 import ch.ethz.bsse.quasirecomb.modelsampling.ModelSampling;
 import ch.ethz.bsse.quasirecomb.utils.BitMagic;
@@ -86,6 +88,8 @@ public class Preprocessing {
                 N += r.getCount();
             }
         }
+        //the reads are final from here on, move them into a compact arena
+        reads = ReadStore.compact(reads);
 
         plot();
 
@@ -228,6 +232,7 @@ public class Preprocessing {
             System.out.println("\nQuasispecies saved: " + Globals.getINSTANCE().getSAVEPATH() + "quasispecies.fasta");
         }
         if (!Globals.getINSTANCE().isDEBUG()) {
+            Threading.getINSTANCE().awaitWriter();
             deleteDirectory(new File(Globals.getINSTANCE().getSAVEPATH() + "support" + File.separator + "snapshots"));
         }
 //        }
@@ -0,0 +1,431 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
+import ch.ethz.bsse.quasirecomb.informationholder.Threading;
+import ch.ethz.bsse.quasirecomb.utils.OptimumIO;
+import ch.ethz.bsse.quasirecomb.utils.Utils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Checkpoints of a run in support/snapshots/checkpoint, which allow to resume
+ * an interrupted run with -resume.
+ *
+ * With -checkpoint every finished K of the model selection, every finished
+ * restart and, every CHECKPOINT seconds, the parameters of every running
+ * restart are saved. The files are named after the phase (modelselection or
+ * training), K and the restart, e.g. modelselection_K3_R007_running. Each
+ * checkpoint consists of an .optimum file and a .properties file with the
+ * remaining state; the .properties file is written last, thus only complete
+ * checkpoints are resumed. Both files are replaced one after the other, thus
+ * the .properties file carries a stamp of its optimum and a checkpoint whose
+ * files do not belong together is ignored. Checkpoints are written by the
+ * background writer of {@link Threading}.
+ *
+ * A resumed run skips finished K and restarts and continues running restarts
+ * exactly from the iteration at which they were saved: the parameters, the
+ * seed and iteration of the random perturbations, the annealing, the
+ * convergence history, the SQUAREM step length and the BIAS_MU heuristic are
+ * restored. The race and -stopQuick compare against the other restarts and
+ * thus may decide differently. Checkpoints that do not match the current
+ * number of positions or the alphabet are ignored.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class Checkpoint {
+
+    public static boolean isEnabled() {
+        return Globals.getINSTANCE().getCHECKPOINT() > 0;
+    }
+
+    public static boolean isResuming() {
+        return Globals.getINSTANCE().getRESUME() != null;
+    }
+
+    /**
+     * Saves the result of a finished K and removes the checkpoints of its
+     * restarts.
+     */
+    public static void saveK(final int K, EM em) {
+        if (!isEnabled() || em.isCancelled()) {
+            return;
+        }
+        Properties p = new Properties();
+        p.setProperty("K", String.valueOf(K));
+        p.setProperty("maxBIC", String.valueOf(em.getMaxBIC()));
+        p.setProperty("medianBIC", String.valueOf(em.getMedianBIC()));
+        p.setProperty("lowerBoundBIC", String.valueOf(em.getLowerBoundBIC()));
+        StringBuilder sb = new StringBuilder();
+        for (Double bic : em.getBics()) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(bic);
+        }
+        p.setProperty("bics", sb.toString());
+        final String prefix = phase() + "_K" + K;
+        save(prefix, em.getOr(), p, new Runnable() {
+            @Override
+            public void run() {
+                File[] files = new File(dir()).listFiles();
+                if (files != null) {
+                    for (File f : files) {
+                        if (f.getName().startsWith(prefix + "_R")) {
+                            f.delete();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the finished K of the interrupted run or null
+     */
+    public static EM loadK(int K, int L, int n) {
+        String prefix = phase() + "_K" + K;
+        Properties p = properties(prefix);
+        OptimalResult or = p == null ? null : optimum(prefix, p, L, n);
+        if (or == null) {
+            return null;
+        }
+        String[] split = p.getProperty("bics").split(",");
+        Double[] bics = new Double[split.length];
+        for (int i = 0; i < split.length; i++) {
+            bics[i] = Double.valueOf(split[i]);
+        }
+        return new EM(K, or, bics, Double.parseDouble(p.getProperty("maxBIC")), Double.parseDouble(p.getProperty("medianBIC")), Double.parseDouble(p.getProperty("lowerBoundBIC")));
+    }
+
+    /**
+     * @return whether the interrupted run has finished K
+     */
+    public static boolean hasK(int K) {
+        return isResuming() && new File(resumeDir() + phase() + "_K" + K + ".properties").exists();
+    }
+
+    /**
+     * Saves a finished restart and removes its running checkpoint.
+     */
+    public static void saveRestart(int K, int repeat, SingleEM sem) {
+        if (!isEnabled() || repeat < 0) {
+            return;
+        }
+        Properties p = new Properties();
+        p.setProperty("loglikelihood", String.valueOf(sem.getLoglikelihood()));
+        p.setProperty("iterations", String.valueOf(sem.getIterations()));
+        p.setProperty("pruned", String.valueOf(sem.getPruned()));
+        final String running = restart(K, repeat) + "_running";
+        save(restart(K, repeat), sem.getOptimalResult(), p, new Runnable() {
+            @Override
+            public void run() {
+                new File(dir() + running + ".properties").delete();
+                new File(dir() + running + ".optimum").delete();
+            }
+        });
+    }
+
+    /**
+     * @return the finished restart of the interrupted run or null
+     */
+    public static SingleEM loadRestart(int K, int L, int n, int repeat, RunState state) {
+        String prefix = restart(K, repeat);
+        Properties p = properties(prefix);
+        OptimalResult or = p == null ? null : optimum(prefix, p, L, n);
+        if (or == null || or.getK() != K) {
+            return null;
+        }
+        return new SingleEM(or, Double.parseDouble(p.getProperty("loglikelihood")), Integer.parseInt(p.getProperty("iterations")), Integer.parseInt(p.getProperty("pruned")), repeat, state);
+    }
+
+    /**
+     * Saves the state of a running restart before an iteration.
+     *
+     * @param or current parameters and log-likelihood of the model
+     * @param running remaining state, its parameters are not used
+     */
+    public static void saveRunning(int K, int repeat, OptimalResult or, Running running) {
+        Properties p = new Properties();
+        p.setProperty("seed", String.valueOf(running.getSeed()));
+        p.setProperty("step", String.valueOf(running.getStep()));
+        p.setProperty("iterations", String.valueOf(running.getIterations()));
+        p.setProperty("multMu", String.valueOf(running.getMultMu()));
+        p.setProperty("multRho", String.valueOf(running.getMultRho()));
+        p.setProperty("beta", String.valueOf(running.getBeta()));
+        p.setProperty("loglikelihood", String.valueOf(running.getLoglikelihood()));
+        p.setProperty("oldllh", String.valueOf(running.getOldllh()));
+        StringBuilder sb = new StringBuilder();
+        for (Double llh : running.getHistory()) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(llh);
+        }
+        p.setProperty("history", sb.toString());
+        p.setProperty("maxStep", String.valueOf(running.getMaxStep()));
+        StringBuilder bias = new StringBuilder();
+        for (int b : running.getBias()) {
+            if (bias.length() > 0) {
+                bias.append(",");
+            }
+            bias.append(b);
+        }
+        p.setProperty("bias", bias.toString());
+        save(restart(K, repeat) + "_running", or, p, null);
+    }
+
+    /**
+     * @return the state of the restart at the time the interrupted run saved
+     * it or null
+     */
+    public static Running loadRunning(int K, int L, int n, int repeat) {
+        String prefix = restart(K, repeat) + "_running";
+        Properties p = properties(prefix);
+        OptimalResult or = p == null ? null : optimum(prefix, p, L, n);
+        if (or == null || or.getK() != K) {
+            return null;
+        }
+        List<Double> history = new ArrayList<>();
+        for (String llh : p.getProperty("history").split(",")) {
+            if (!llh.isEmpty()) {
+                history.add(Double.valueOf(llh));
+            }
+        }
+        String[] split = p.getProperty("bias").split(",");
+        int[] bias = new int[split.length];
+        for (int i = 0; i < split.length; i++) {
+            bias[i] = Integer.parseInt(split[i]);
+        }
+        return new Running(new JHMMParams(or.getL(), or.getK(), or.getn(), or.getRho(), or.getPi(), or.getMu(), or.getEps()),
+                or.getLlh(),
+                Long.parseLong(p.getProperty("seed")),
+                Integer.parseInt(p.getProperty("step")),
+                Integer.parseInt(p.getProperty("iterations")),
+                Double.parseDouble(p.getProperty("multMu")),
+                Double.parseDouble(p.getProperty("multRho")),
+                Double.parseDouble(p.getProperty("beta")),
+                Double.parseDouble(p.getProperty("loglikelihood")),
+                Double.parseDouble(p.getProperty("oldllh")),
+                history,
+                Double.parseDouble(p.getProperty("maxStep")),
+                bias);
+    }
+
+    private static String phase() {
+        return Globals.getINSTANCE().isMODELSELECTION() ? "modelselection" : "training";
+    }
+
+    private static String restart(int K, int repeat) {
+        return phase() + "_K" + K + "_R" + (repeat < 10 ? "00" : repeat < 100 ? "0" : "") + repeat;
+    }
+
+    private static String dir() {
+        return Globals.getINSTANCE().getSnapshotDir() + "checkpoint" + File.separator;
+    }
+
+    private static String resumeDir() {
+        return Globals.getINSTANCE().getRESUME() + "support" + File.separator + "snapshots" + File.separator + "checkpoint" + File.separator;
+    }
+
+    /**
+     * Writes the optimum and then the properties on the background writer.
+     *
+     * @param then runs after both files have been written, may be null
+     */
+    private static void save(final String prefix, final OptimalResult or, final Properties p, final Runnable then) {
+        Threading.getINSTANCE().getWriter().submit(new Runnable() {
+            @Override
+            public void run() {
+                Utils.mkdir(dir());
+                Utils.saveOptimum(dir() + prefix + ".optimum", or);
+                p.setProperty("stamp", stamp(or));
+                File tmp = new File(dir() + prefix + ".properties.tmp");
+                try {
+                    try (OutputStream out = new FileOutputStream(tmp)) {
+                        p.store(out, null);
+                    }
+                    Files.move(tmp.toPath(), new File(dir() + prefix + ".properties").toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    System.err.println("Checkpoint saving\n" + ex.getMessage());
+                }
+                if (then != null) {
+                    then.run();
+                }
+            }
+        });
+    }
+
+    private static Properties properties(String prefix) {
+        if (!isResuming()) {
+            return null;
+        }
+        File f = new File(resumeDir() + prefix + ".properties");
+        if (!f.exists()) {
+            return null;
+        }
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(f)) {
+            p.load(in);
+        } catch (IOException ex) {
+            System.err.println(ex);
+            return null;
+        }
+        return p;
+    }
+
+    /**
+     * @return the optimum of the checkpoint, if it was written together with
+     * the properties p and fits the data, otherwise null
+     */
+    private static OptimalResult optimum(String prefix, Properties p, int L, int n) {
+        try {
+            OptimalResult or = OptimumIO.read(resumeDir() + prefix + ".optimum");
+            if (!stamp(or).equals(p.getProperty("stamp"))) {
+                System.err.println("Checkpoint " + prefix + " is ignored, its optimum does not belong to its properties");
+                return null;
+            }
+            if (or.getL() == L && or.getn() == n) {
+                return or;
+            }
+        } catch (IOException | ClassNotFoundException ex) {
+            System.err.println(ex);
+        }
+        return null;
+    }
+
+    /**
+     * Identifies the optimum a .properties file was written with, by the
+     * E-steps, log-likelihood and BIC that are stored in the optimum.
+     */
+    private static String stamp(OptimalResult or) {
+        return or.getRestarts() + "/" + or.getLlh() + "/" + or.getBIC();
+    }
+
+    /**
+     * State of a running restart before an iteration.
+     */
+    public static class Running {
+
+        private final JHMMParams params;
+        private final double modelLoglikelihood;
+        private final long seed;
+        private final int step;
+        private final int iterations;
+        private final double multMu;
+        private final double multRho;
+        private final double beta;
+        private final double loglikelihood;
+        private final double oldllh;
+        private final List<Double> history;
+        private final double maxStep;
+        private final int[] bias;
+
+        /**
+         * @param params parameters of the model
+         * @param modelLoglikelihood log-likelihood of the model, of the E-step
+         * before its last M-step
+         * @param seed seed of the model
+         * @param step number of iterations of the model
+         * @param iterations iterations of the current annealing stage
+         * @param loglikelihood log-likelihood of the previous iteration
+         * @param oldllh log-likelihood of the iteration before
+         * @param history log-likelihoods of at most the last 500 iterations
+         * @param maxStep step length of SQUAREM
+         * @param bias state of the BIAS_MU heuristic of the model
+         */
+        public Running(JHMMParams params, double modelLoglikelihood, long seed, int step, int iterations, double multMu, double multRho, double beta, double loglikelihood, double oldllh, List<Double> history, double maxStep, int[] bias) {
+            this.params = params;
+            this.modelLoglikelihood = modelLoglikelihood;
+            this.seed = seed;
+            this.step = step;
+            this.iterations = iterations;
+            this.multMu = multMu;
+            this.multRho = multRho;
+            this.beta = beta;
+            this.loglikelihood = loglikelihood;
+            this.oldllh = oldllh;
+            this.history = history;
+            this.maxStep = maxStep;
+            this.bias = bias;
+        }
+
+        public JHMMParams getParams() {
+            return params;
+        }
+
+        public double getModelLoglikelihood() {
+            return modelLoglikelihood;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getStep() {
+            return step;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public double getMultMu() {
+            return multMu;
+        }
+
+        public double getMultRho() {
+            return multRho;
+        }
+
+        public double getBeta() {
+            return beta;
+        }
+
+        public double getLoglikelihood() {
+            return loglikelihood;
+        }
+
+        public double getOldllh() {
+            return oldllh;
+        }
+
+        public List<Double> getHistory() {
+            return history;
+        }
+
+        public double getMaxStep() {
+            return maxStep;
+        }
+
+        public int[] getBias() {
+            return bias;
+        }
+    }
+}
@@ -20,12 +20,15 @@ package ch.ethz.bsse.quasirecomb.model.hmm;
 import ch.ethz.bsse.quasirecomb.informationholder.Globals;
 import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
 import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.model.hmm.parallel.RestartLane;
+import ch.ethz.bsse.quasirecomb.utils.OptimumIO;
 import ch.ethz.bsse.quasirecomb.utils.StatusUpdate;
 import ch.ethz.bsse.quasirecomb.utils.Utils;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.math.stat.descriptive.moment.StandardDeviation;
 import org.apache.commons.math.stat.descriptive.rank.Median;
 
@@ -41,16 +44,51 @@ public class EM extends Utils {
     private double lowerBoundBIC;
     private Double bics[];
     private double maxBIC = Double.NEGATIVE_INFINITY;
+    private final RunState state;
+    private final OptimalResult warmStart;
+    private final StringBuilder log = new StringBuilder();
 
     protected EM(int N, int L, int K, int n, Read[] reads) {
+        this(N, L, K, n, reads, new RunState());
+    }
+
+    /**
+     * @param state allows to cancel the run, in which case no result is
+     * available
+     */
+    protected EM(int N, int L, int K, int n, Read[] reads, RunState state) {
+        this(N, L, K, n, reads, state, null);
+    }
+
+    /**
+     * @param warmStart optimum with K - 1 generators that initializes the
+     * restarts as described in {@link WarmStart}, ignored if null or not
+     * compatible
+     */
+    protected EM(int N, int L, int K, int n, Read[] reads, RunState state, OptimalResult warmStart) {
+        this.state = state;
+        if (warmStart != null && (warmStart.getK() != K - 1 || warmStart.getL() != L || warmStart.getn() != n || Globals.getINSTANCE().isPRUNE())) {
+            warmStart = null;
+        }
+        this.warmStart = warmStart;
         this.blackbox(reads, N, L, K, n);
     }
 
+    /**
+     * Restores a finished K from its checkpoint.
+     */
+    EM(int K, OptimalResult or, Double[] bics, double maxBIC, double medianBIC, double lowerBoundBIC) {
+        this.state = new RunState();
+        this.warmStart = null;
+        this.or = or;
+        this.bics = bics;
+        this.maxBIC = maxBIC;
+        this.medianBIC = medianBIC;
+        this.lowerBoundBIC = lowerBoundBIC;
+        StatusUpdate.getINSTANCE().printBIC(K, 100, (int) or.getBIC());
+    }
+
     private void blackbox(Read[] reads, int N, int L, int K, int n) {
-        Globals.getINSTANCE().setLOG(new StringBuilder());
-        Globals.getINSTANCE().setMAX_LLH(-1);
-        Globals.getINSTANCE().setMIN_BIC(Double.MAX_VALUE);
-        String pathOptimum = null;
         if (K == 1 || Globals.getINSTANCE().isFORCE_NO_RECOMB()) {
             Globals.getINSTANCE().setNO_RECOMB(true);
         } else {
@@ -58,59 +96,93 @@ public class EM extends Utils {
         }
         if (Globals.getINSTANCE().getOPTIMUM() == null) {
             double maxLLH = Double.NEGATIVE_INFINITY;
+            SingleEM best = null;
             bics = new Double[Globals.getINSTANCE().getREPEATS()];
             double[] bics_local = new double[Globals.getINSTANCE().getREPEATS()];
-            for (int i = 0; i < Globals.getINSTANCE().getREPEATS(); i++) {
-                SingleEM sem = new SingleEM(N, K, L, n, reads, Globals.getINSTANCE().getDELTA_LLH(), i);
-                bics_local[i] = sem.getOptimalResult().getBIC();
+            int finished = 0;
+            SingleEM[] runs = this.restarts(reads, N, L, K, n);
+            if (state.isCancelled()) {
+                return;
+            }
+            for (int i = 0; i < runs.length; i++) {
+                SingleEM sem = runs[i];
+                this.log.append(sem.getLog());
+                if (sem.getPruned() > 0) {
+                    //pruned restarts stopped early, their BIC is not comparable
+                    bics[i] = Double.NaN;
+                    continue;
+                }
+                bics_local[finished++] = sem.getOptimalResult().getBIC();
                 bics[i] = sem.getOptimalResult().getBIC();
                 this.maxBIC = Math.max(this.maxBIC, sem.getOptimalResult().getBIC());
                 if (sem.getLoglikelihood() > maxLLH) {
                     maxLLH = sem.getLoglikelihood();
-                    pathOptimum = sem.getOptimumPath();
+                    best = sem;
                 }
             }
+            or = best.getOptimalResult();
+            if (Globals.getINSTANCE().isSNAPSHOTS() || Globals.getINSTANCE().isDEBUG()) {
+                best.persist();
+            }
+            this.log.append(state.getLeaderboard().summary());
+            bics_local = Arrays.copyOf(bics_local, finished);
             medianBIC = new Median().evaluate(bics_local);
             lowerBoundBIC = medianBIC - new StandardDeviation().evaluate(bics_local) * Math.sqrt(1 + 1d / bics_local.length);
         } else {
-            pathOptimum = Globals.getINSTANCE().getOPTIMUM();
-        }
-        if (Globals.getINSTANCE().isMODELSELECTION()) {
             try {
-                FileInputStream fis = new FileInputStream(pathOptimum);
-                try (ObjectInputStream in = new ObjectInputStream(fis)) {
-                    or = (OptimalResult) in.readObject();
-                }
+                or = OptimumIO.read(Globals.getINSTANCE().getOPTIMUM());
             } catch (IOException | ClassNotFoundException ex) {
                 System.err.println(ex);
             }
-            StatusUpdate.getINSTANCE().printBIC(K, (int) or.getBIC());
+        }
+        if (Globals.getINSTANCE().isMODELSELECTION()) {
+            StatusUpdate.getINSTANCE().printBIC(K, state.getPercentage(), (int) or.getBIC());
         } else {
-            try {
-                FileInputStream fis = new FileInputStream(pathOptimum);
-                try (ObjectInputStream in = new ObjectInputStream(fis)) {
-                    or = (OptimalResult) in.readObject();
-                }
-            } catch (IOException | ClassNotFoundException ex) {
-                System.err.println(ex);
-            }
-
-            StatusUpdate.getINSTANCE().printBIC(K, (int) or.getBIC());
+            StatusUpdate.getINSTANCE().printBIC(K, state.getPercentage(), (int) or.getBIC());
             System.out.print("\n");
             if (!Globals.getINSTANCE().isSUBSAMPLE()) {
 //            Globals.getINSTANCE().setREFINEMENT(true);
                 if (!Globals.getINSTANCE().isANNEALING()) {
-                    SingleEM bestEM = new SingleEM(or, Globals.getINSTANCE().getDELTA_REFINE_LLH(), reads);
+                    SingleEM bestEM = new SingleEM(or, Globals.getINSTANCE().getDELTA_REFINE_LLH(), reads, state);
+                    this.log.append(bestEM.getLog());
                     this.or = bestEM.getOptimalResult();
                 }
                 StatusUpdate.getINSTANCE().printBIC(K, 100, (int) this.or.getBIC());
                 if (Globals.getINSTANCE().isLOGGING()) {
-                    Utils.saveFile(Globals.getINSTANCE().getSAVEPATH() + "support" + File.separator + "log_K" + K, Globals.getINSTANCE().getLOG().toString());
+                    Utils.saveFile(Globals.getINSTANCE().getSAVEPATH() + "support" + File.separator + "log_K" + K, this.log.toString());
                 }
             }
         }
     }
 
+    /**
+     * Runs all restarts, up to PARALLEL_RESTARTS of them at once. Concurrent
+     * restarts run on the shared fork/join pool, thus they stay within the
+     * thread budget of -threads.
+     *
+     * @return the restarts in the order of their index
+     */
+    private SingleEM[] restarts(Read[] reads, int N, int L, int K, int n) {
+        SingleEM[] runs = new SingleEM[Globals.getINSTANCE().getREPEATS()];
+        int lanes = Math.min(Globals.getINSTANCE().getPARALLEL_RESTARTS(), Math.min(runs.length, Globals.getINSTANCE().getCpus()));
+        AtomicInteger next = new AtomicInteger();
+        if (lanes <= 1) {
+            new RestartLane(N, L, K, n, reads, next, runs, state, warmStart).invoke();
+        } else {
+            final RestartLane[] tasks = new RestartLane[lanes];
+            for (int i = 0; i < lanes; i++) {
+                tasks[i] = new RestartLane(N, L, K, n, reads, next, runs, state, warmStart);
+            }
+            Globals.getINSTANCE().getFjPool().invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        return runs;
+    }
+
     /**
      * The double 3D array of mu for the best result.
      *
@@ -157,4 +229,8 @@ public class EM extends Utils {
     public double getMaxBIC() {
         return maxBIC;
     }
+
+    public boolean isCancelled() {
+        return state.isCancelled();
+    }
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+/**
+ * Emission probabilities of an observed base, marginalized over the true base
+ * v, for every position j and generator k. The table is rebuilt once per
+ * iteration after the M-step and replaces the inner sum over v in the E-step
+ * by a lookup.
+ *
+ * For an observed base b the table holds
+ * <ul>
+ * <li>marginal: sum_v (b == v ? antieps[j] : eps[j]) * mu[j][k][v]</li>
+ * <li>mismatch: sum_{v != b} mu[j][k][v]</li>
+ * </ul>
+ * The latter allows to compute the PHRED weighted marginal of a base with
+ * correctness probability q as antieps[j] * q * mu[j][k][b] + eps[j] * (1 -
+ * q) / n * mismatch without quantizing q. Bases outside of the alphabet map to
+ * slot n, for which every v is a mismatch.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class EmissionTable {
+
+    private int L;
+    private int K;
+    private int n;
+    private int stride;
+    private double[] marginal = new double[0];
+    private double[] mismatch = new double[0];
+
+    /**
+     * Recomputes the table from the current parameters, reusing the arrays
+     * if the dimensions did not change.
+     *
+     * @param params current parameters of the jumping HMM
+     */
+    public void update(JHMMParams params) {
+        this.L = params.getL();
+        this.K = params.getK();
+        this.n = params.getn();
+        this.stride = n + 1;
+        int size = L * K * stride;
+        if (marginal.length != size) {
+            marginal = new double[size];
+            mismatch = new double[size];
+        }
+        double[] mu = params.getMu();
+        double[] eps = params.getEps();
+        double[] antieps = params.getAntieps();
+        for (int j = 0; j < L; j++) {
+            for (int k = 0; k < K; k++) {
+                int jk = params.muIndex(j, k);
+                int jkb = (j * K + k) * stride;
+                for (int b = 0; b <= n; b++) {
+                    double marginalV = 0d;
+                    double rest = 0d;
+                    for (int v = 0; v < n; v++) {
+                        marginalV += (b == v ? antieps[j] : eps[j]) * mu[jk + v];
+                        if (b != v) {
+                            rest += mu[jk + v];
+                        }
+                    }
+                    marginal[jkb + b] = marginalV;
+                    mismatch[jkb + b] = rest;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param j global position
+     * @param k generator
+     * @param b observed base
+     * @return offset of the entry in {@link #getMarginal()} and
+     * {@link #getMismatch()}
+     */
+    public final int index(int j, int k, int b) {
+        return (j * K + k) * stride + (b < n ? b : n);
+    }
+
+    public double[] getMarginal() {
+        return marginal;
+    }
+
+    public double[] getMismatch() {
+        return mismatch;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+
+/**
+ * Computes the forward-backward pass of a single read and adds its expected
+ * counts to the given storage.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public interface ForwardBackwardEngine {
+
+    /**
+     * @param jhmm current model
+     * @param read read to process
+     * @param storage expected count storage of the calling worker
+     * @param ws scratch buffers of the calling worker, large enough for read
+     * @return log-likelihood of the read, weighted by its count
+     */
+    double computeFB(JHMM jhmm, Read read, ParallelJHMMStorage storage, ForwardBackwardWorkspace ws);
+}
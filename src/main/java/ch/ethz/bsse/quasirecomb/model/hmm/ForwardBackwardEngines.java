@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+
+/**
+ * Registry of the available forward-backward engines.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class ForwardBackwardEngines {
+
+    public static final String REFERENCE = "reference";
+    public static final String VECTORIZED = "vectorized";
+    /**
+     * Maximal relative difference of read log-likelihoods, up to which two
+     * engines are considered equivalent.
+     */
+    public static final double TOLERANCE = 1e-9;
+
+    /**
+     * @param name engine name as given by -engine
+     * @return a new instance of the engine
+     * @throws IllegalArgumentException if there is no engine with this name
+     */
+    public static ForwardBackwardEngine get(String name) {
+        switch (name) {
+            case REFERENCE:
+                return new ReferenceEngine();
+            case VECTORIZED:
+                return new VectorizedEngine();
+            default:
+                throw new IllegalArgumentException("Unknown engine " + name + ", choose " + REFERENCE + " or " + VECTORIZED + ".");
+        }
+    }
+
+    /**
+     * Runs both engines on every read with the current parameters of jhmm.
+     * The expected counts are written into private storages and discarded.
+     *
+     * @return maximum of the largest relative difference of the read
+     * log-likelihoods and the relative L1 distance of the expected counts
+     */
+    public static double compare(JHMM jhmm, Read[] reads, ForwardBackwardEngine a, ForwardBackwardEngine b) {
+        ParallelJHMMStorage storageA = new ParallelJHMMStorage(jhmm.getL(), jhmm.getK(), jhmm.getn(), -1);
+        ParallelJHMMStorage storageB = new ParallelJHMMStorage(jhmm.getL(), jhmm.getK(), jhmm.getn(), -1);
+        ForwardBackwardWorkspace ws = new ForwardBackwardWorkspace();
+        ws.ensureCapacity(jhmm.getMaxReadLength(), jhmm.getK(), jhmm.getn());
+        double max = 0d;
+        for (Read read : reads) {
+            double llhA = a.computeFB(jhmm, read, storageA, ws);
+            double llhB = b.computeFB(jhmm, read, storageB, ws);
+            double diff = Math.abs(llhA - llhB);
+            if (diff > 0) {
+                diff /= Math.max(Math.abs(llhA), Math.abs(llhB));
+            }
+            if (Double.isNaN(diff)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            max = Math.max(max, diff);
+        }
+        max = Math.max(max, distance(storageA.getnJKV(), storageB.getnJKV()));
+        max = Math.max(max, distance(storageA.getnJKL(), storageB.getnJKL()));
+        return max;
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double diff = 0d;
+        double sum = 0d;
+        for (int i = 0; i < a.length; i++) {
+            diff += Math.abs(a[i] - b[i]);
+            sum += Math.abs(a[i]);
+        }
+        if (Double.isNaN(diff)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return sum == 0 ? diff : diff / sum;
+    }
+}
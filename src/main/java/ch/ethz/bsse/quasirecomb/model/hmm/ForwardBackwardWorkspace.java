@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+/**
+ * Reusable forward-backward buffers of a single worker thread. The arrays are
+ * flat and row-major, i.e. fJKV[j][k][v] is stored at (j * K + k) * n + v and
+ * fJK[j][k] as well as bJK[j][k] at j * K + k. Buffers only grow, thus after
+ * the first read of maximal length no further allocation takes place.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class ForwardBackwardWorkspace {
+
+    private static final ThreadLocal<ForwardBackwardWorkspace> LOCAL = new ThreadLocal<ForwardBackwardWorkspace>() {
+        @Override
+        protected ForwardBackwardWorkspace initialValue() {
+            return new ForwardBackwardWorkspace();
+        }
+    };
+    double[] fJKV = new double[0];
+    double[] fJK = new double[0];
+    double[] bJK = new double[0];
+    double[] c = new double[0];
+    double[] prior = new double[0];
+    double[] weight = new double[0];
+    double[] emission = new double[0];
+
+    /**
+     * @return the workspace bound to the calling thread
+     */
+    public static ForwardBackwardWorkspace getLocal() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Makes sure that reads up to the given length can be processed.
+     *
+     * @param length number of positions of the longest read
+     * @param K number of generators
+     * @param n alphabet size
+     */
+    public void ensureCapacity(int length, int K, int n) {
+        if (fJKV.length < length * K * n) {
+            fJKV = new double[length * K * n];
+        }
+        if (fJK.length < length * K) {
+            fJK = new double[length * K];
+            bJK = new double[length * K];
+        }
+        if (c.length < length) {
+            c = new double[length];
+        }
+        if (prior.length < K) {
+            prior = new double[K];
+            weight = new double[K];
+        }
+        if (emission.length < n) {
+            emission = new double[n];
+        }
+    }
+}
@@ -17,28 +17,21 @@
  */
 package ch.ethz.bsse.quasirecomb.model.hmm;
 
+import cc.mallet.util.Randoms;
 import ch.ethz.bsse.quasirecomb.distance.KullbackLeibler;
 import ch.ethz.bsse.quasirecomb.informationholder.Globals;
 import ch.ethz.bsse.quasirecomb.informationholder.Read;
 import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
-import ch.ethz.bsse.quasirecomb.informationholder.Threading;
-import ch.ethz.bsse.quasirecomb.model.hmm.parallel.CallableReadHMMList;
+import ch.ethz.bsse.quasirecomb.model.hmm.parallel.ExpectedCountsReduction;
+import ch.ethz.bsse.quasirecomb.model.hmm.parallel.ForwardBackwardTask;
+import ch.ethz.bsse.quasirecomb.model.hmm.parallel.MaximizationTask;
+import ch.ethz.bsse.quasirecomb.model.hmm.parallel.PartitionPlan;
 import ch.ethz.bsse.quasirecomb.utils.Random;
-import ch.ethz.bsse.quasirecomb.utils.StatusUpdate;
+import ch.ethz.bsse.quasirecomb.utils.SpecialFunctions.ExpDigammaMemo;
 import ch.ethz.bsse.quasirecomb.utils.Utils;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import org.javatuples.Pair;
 import org.javatuples.Triplet;
 
@@ -56,186 +49,226 @@ public class JHMM {
     protected int n;
     protected double[][] snv;
     //rho[j][k][l] := transition prob. at position j, for l given k
-    protected double[][][] rho;
-    protected double[][] pi;
-    protected double[][][] mu;
-    protected double[] eps;
-    protected double[] antieps;
+    protected JHMMParams params;
+    protected EmissionTable emissions = new EmissionTable();
+    protected ForwardBackwardEngine engine;
     protected double loglikelihood;
     protected double[][][] nJKL;
     protected double[][][] nJKV;
     protected double[] nneqPos;
     protected double[] muPrior;
+    //f of the hyperparameters of zero counts
+    protected ExpDigammaMemo memo;
     protected Read[] allReads;
+    protected int maxReadLength;
     protected int restart = 0;
     protected int coverage[];
     protected int muChanged = 0;
     protected int rhoChanged = 0;
     protected boolean paired;
-    protected double[][][] rho_old;
-    protected double[][][] mu_old;
     private int oldFlatMu = -1;
     private boolean biasMu = false;
     private int biasCounter = 0;
     private int unBiasCounter = 0;
     private int s = 0;
     private double beta = 0.0001;
-    private Map<Integer, ParallelJHMMStorage> garage = new HashMap<>();
+    private double multMu;
+    private double multRho;
+    private long seed;
+    private PartitionPlan plan;
+    private ParallelJHMMStorage[] storages = new ParallelJHMMStorage[0];
 
-    public JHMM(Read[] reads, int N, int L, int K, int n, double epsilon, int Kmin) {
+    /**
+     * @param seed seed of the random initial parameters and of the random
+     * perturbations of the M-step, a run is reproduced by the same seed
+     */
+    public JHMM(Read[] reads, int N, int L, int K, int n, double epsilon, int Kmin, long seed) {
+        this(reads, N, L, K, n, epsilon, Kmin, seed, Random.randoms(seed));
+    }
+
+    private JHMM(Read[] reads, int N, int L, int K, int n, double epsilon, int Kmin, long seed, Randoms rnd) {
         this(reads, N, L, K, n, epsilon,
-                Random.generateInitRho(L - 1, K),
-                Random.generateInitPi(L, K),
-                Random.generateMuInit(L, K, n), Kmin);
+                Random.generateInitRho(L - 1, K, rnd),
+                Random.generateInitPi(L, K, rnd),
+                Random.generateMuInit(L, K, n, rnd), Kmin, seed);
     }
 
-    public JHMM(Read[] reads, int N, int L, int K, int n, double eps, double[][][] rho, double[][] pi, double[][][] mu, int Kmin) {
-        this.eps = new double[L];
-        this.antieps = new double[L];
-        for (int j = 0; j < L; j++) {
-            this.eps[j] = eps;
-            this.antieps[j] = (1 - (n - 1) * eps);
-        }
+    public JHMM(Read[] reads, int N, int L, int K, int n, double eps, double[][][] rho, double[][] pi, double[][][] mu, int Kmin, long seed) {
+        double[] epsJ = new double[L];
+        Arrays.fill(epsJ, eps);
         this.Kmin = Kmin;
-        this.prepare(reads, N, L, K, n, rho, pi, mu);
+        this.prepare(reads, N, L, K, n, epsJ, rho, pi, mu, seed);
         this.compute();
     }
 
-    public JHMM(Read[] reads, int N, int L, int K, int n, double[] eps, double[][][] rho, double[][] pi, double[][][] mu, int Kmin) {
-        this.eps = eps;
-        this.antieps = new double[L];
-        for (int j = 0; j < L; j++) {
-            this.antieps[j] = (1 - (n - 1) * eps[j]);
-        }
+    public JHMM(Read[] reads, int N, int L, int K, int n, double[] eps, double[][][] rho, double[][] pi, double[][][] mu, int Kmin, long seed) {
+        this.Kmin = Kmin;
+        this.prepare(reads, N, L, K, n, eps, rho, pi, mu, seed);
+        this.compute();
+    }
+
+    /**
+     * Starts from the given parameters with the given annealing state, which
+     * is already used by the first iteration.
+     */
+    JHMM(Read[] reads, int N, JHMMParams init, int Kmin, long seed, double multMu, double multRho, double beta) {
         this.Kmin = Kmin;
-        this.prepare(reads, N, L, K, n, rho, pi, mu);
+        this.prepare(reads, N, init.getL(), init.getK(), init.getn(), init.getEps(), init.exportRho(), init.exportPi(), init.exportMu(), seed);
+        this.multMu = multMu;
+        this.multRho = multRho;
+        this.beta = beta;
         this.compute();
     }
 
+    /**
+     * Restores the model of a running restart from its checkpoint, which was
+     * saved before an iteration; nothing is computed, the next
+     * {@link #restart()} continues the restart.
+     */
+    JHMM(Read[] reads, int N, Checkpoint.Running running) {
+        JHMMParams init = running.getParams();
+        this.Kmin = init.getK();
+        this.prepare(reads, N, init.getL(), init.getK(), init.getn(), init.getEps(), init.exportRho(), init.exportPi(), init.exportMu(), running.getSeed());
+        this.multMu = running.getMultMu();
+        this.multRho = running.getMultRho();
+        this.beta = running.getBeta();
+        this.loglikelihood = running.getModelLoglikelihood();
+        //the constructor computed the first step, every restart one more
+        this.s = running.getStep();
+        this.restart = this.s - 1;
+        int[] bias = running.getBias();
+        this.oldFlatMu = bias[0];
+        this.biasMu = bias[1] != 0;
+        this.biasCounter = bias[2];
+        this.unBiasCounter = bias[3];
+    }
+
     private void compute() {
-        this.nJKL = new double[L][K][K];
-        this.nJKV = new double[L][K][n];
-        this.nneqPos = new double[L];
+        if (s == 0 && Globals.getINSTANCE().isENGINE_CHECK()) {
+            this.checkEngine();
+        }
         this.eStep();
         this.mStep();
         s++;
     }
-    List<Callable<Double>> callables = new LinkedList<>();
 
     private void eStep() {
-        for (ParallelJHMMStorage p : this.garage.values()) {
-            p.clear();
-        }
-        this.loglikelihood = 0d;
-        if (callables.isEmpty()) {
-            final int readAmount = allReads.length;
-            int max;
-            if (readAmount <= (Runtime.getRuntime().availableProcessors() - 1)) {
-                max = 2;
-            } else if (Globals.getINSTANCE().getSTEPS() == 2) {
-                max = (int) (readAmount / (Runtime.getRuntime().availableProcessors() - 1));
-            } else {
-                max = Globals.getINSTANCE().getSTEPS();
-            }
-            for (int i = 0; i < readAmount; i += max) {
-                int b = i + max;
-                if (b >= readAmount) {
-                    b = readAmount;
-                }
-                ParallelJHMMStorage p = new ParallelJHMMStorage(L, K, n, i);
-                garage.put(i, p);
-                callables.add(new CallableReadHMMList(this, Arrays.copyOfRange(allReads, i, b), p));
-                StatusUpdate.getINSTANCE().printPercentage(K, (double) i / readAmount, Kmin);
-            }
+        if (plan == null) {
+            plan = new PartitionPlan(allReads, K);
         }
-        List<Future<Double>> results = null;
-        try {
-            results = Threading.getINSTANCE().getExecutor().invokeAll(callables);
-        } catch (InterruptedException ex) {
-            Logger.getLogger(JHMM.class.getName()).log(Level.SEVERE, null, ex);
+        this.loglikelihood = this.forwardBackward(plan);
+
+        updateExpectedCounts();
+    }
+
+    /**
+     * Computes the log-likelihood of the current parameters by an E-step over
+     * all reads without maximizing. Afterwards, the log-likelihood belongs to
+     * the parameters that are returned by the getters.
+     *
+     * @return the log-likelihood of the current parameters
+     */
+    public double evaluate() {
+        if (plan == null) {
+            plan = new PartitionPlan(allReads, K);
         }
-        
-        int size = results.size();
-        for (int i = 0; i < size; i++) {
-            try {
-                loglikelihood += results.get(i).get();
-            } catch (InterruptedException | ExecutionException ex) {
-                Logger.getLogger(JHMM.class.getName()).log(Level.SEVERE, null, ex);
+        this.loglikelihood = this.forwardBackward(plan);
+        return this.loglikelihood;
+    }
+
+    private double forwardBackward(PartitionPlan plan) {
+        if (storages.length < plan.getStripes()) {
+            int old = storages.length;
+            storages = Arrays.copyOf(storages, plan.getStripes());
+            for (int i = old; i < storages.length; i++) {
+                storages[i] = new ParallelJHMMStorage(L, K, n, i);
             }
         }
+        for (ParallelJHMMStorage p : this.storages) {
+            p.clear();
+        }
+        return Globals.getINSTANCE().getFjPool().invoke(new ForwardBackwardTask(this, plan, 0, plan.getStripes()));
+    }
 
-        updateExpectedCounts();
+    private void checkEngine() {
+        double diff = ForwardBackwardEngines.compare(this, allReads, new ReferenceEngine(), engine);
+        if (diff > ForwardBackwardEngines.TOLERANCE) {
+            System.err.println("Engine " + Globals.getINSTANCE().getENGINE() + " deviates from the reference engine, maximal relative log-likelihood difference: " + diff);
+        } else if (Globals.getINSTANCE().isDEBUG()) {
+            System.out.println("Engine " + Globals.getINSTANCE().getENGINE() + " agrees with the reference engine (" + diff + ")");
+        }
     }
 
     private void updateExpectedCounts() {
         if (Globals.getINSTANCE().isSTORAGE()) {
-            Iterator<ParallelJHMMStorage> iterator = this.garage.values().iterator();
-            ParallelJHMMStorage store = iterator.next();
-            while (iterator.hasNext()) {
-                store.merge(iterator.next());
-            }
+            Globals.getINSTANCE().getFjPool().invoke(new ExpectedCountsReduction(storages, nJKL, nJKV, nneqPos, 0, L));
+        }
+    }
 
-            this.nJKL = new double[L][K][K];
-            this.nJKV = new double[L][K][n];
-            this.nneqPos = new double[L];
-            for (int j = 0; j < L; j++) {
-                for (int k = 0; k < K; k++) {
-                    for (int l = 0; l < K; l++) {
-                        this.nJKL[j][k][l] += store.getnJKL()[j][k][l];
-                    }
-                    for (int v = 0; v < n; v++) {
-                        this.nJKV[j][k][v] += store.getnJKV()[j][k][v];
-                    }
-                }
-                this.nneqPos[j] += store.getNneqPos()[j];
-            }
+    /**
+     * Runs the M-step on the positions [from, to). Positions are independent
+     * of each other, thus disjoint ranges may be maximized concurrently.
+     *
+     * @param result collects the changes of the range
+     */
+    public void maximize(int from, int to, MaximizationTask.Result result) {
+        this.computeSNVPosterior(from, to);
+        if (!Globals.getINSTANCE().isNO_RECOMB()) {
+            this.maximizeRho(from, to, result);
+        }
+        this.maximizePi(from, to, result.getPiDist());
+        this.maximizeMu(from, to, result);
+        if (!Globals.getINSTANCE().isFLAT_EPSILON_PRIOR()) {
+            this.maximizeEps(from, to);
         }
     }
 
-    public void computeSNVPosterior() {
-        double[][][] nJKV_norm = new double[L][K][n];
-        for (int j = 0; j < L; j++) {
+    private void computeSNVPosterior(int from, int to) {
+        double[] nKV_norm = new double[K * n];
+        for (int j = from; j < to; j++) {
             for (int k = 0; k < K; k++) {
                 double min = Double.MAX_VALUE;
                 for (int v = 0; v < n; v++) {
                     min = Math.min(this.nJKV[j][k][v], min);
                 }
                 for (int v = 0; v < n; v++) {
-                    nJKV_norm[j][k][v] = this.nJKV[j][k][v] - min;
+                    nKV_norm[k * n + v] = this.nJKV[j][k][v] - min;
                 }
             }
-        }
-        for (int j = 0; j < L; j++) {
             for (int v = 0; v < n; v++) {
                 this.snv[j][v] = 0;
                 for (int k = 0; k < K; k++) {
-                    this.snv[j][v] += nJKV_norm[j][k][v] / this.coverage[j];
+                    this.snv[j][v] += nKV_norm[k * n + v] / this.coverage[j];
                 }
             }
         }
     }
 
-    private void maximizeMu() {
+    private void maximizeMu(int from, int to, MaximizationTask.Result result) {
+        double[] mu = params.getMu();
+        double[] muPrev = new double[n];
         double[] muJKV;
-        for (int j = 0; j < L; j++) {
+        for (int j = from; j < to; j++) {
 //            if (j >= Globals.getINSTANCE().getTRAIN_WINDOW_BEGIN() && j < Globals.getINSTANCE().getTRAIN_WINDOW_END()) {
             for (int k = 0; k < K; k++) {
+                final int jk = params.muIndex(j, k);
+                System.arraycopy(mu, jk, muPrev, 0, n);
                 double eta = 0;
                 if (Globals.getINSTANCE().isANNEALING()) {
-                    muJKV = Regularizations.deterministicAnnealing(this.nJKV[j][k], this.mu[j][k], beta);
+                    muJKV = Regularizations.deterministicAnnealing(this.nJKV[j][k], muPrev, beta);
                 } else if (Globals.getINSTANCE().getINTERPOLATE_MU() > 0) {
                     eta = Math.pow(Math.pow(s, 2) + 2, -Globals.getINSTANCE().getINTERPOLATE_MU());
-                    muJKV = Regularizations.step(this.nJKV[j][k], this.mu[j][k], eta, Globals.getINSTANCE().isPAIRED());
+                    muJKV = Regularizations.step(this.nJKV[j][k], muPrev, eta, Globals.getINSTANCE().isPAIRED());
                 } else {
                     muJKV = Regularizations.ml(this.nJKV[j][k]);
                 }
-                double mult = Globals.getINSTANCE().getMULT_MU();
+                double mult = this.multMu;
 //                if (Globals.getINSTANCE().getINTERPOLATE_MU() > 0) {
                 double[] muPriorLocal = new double[n];
                 System.arraycopy(this.muPrior, 0, muPriorLocal, 0, n);
                 boolean repeat = true;
                 do {
-                    muJKV = Regularizations.regularizeOnce(muJKV, restart, muPriorLocal, mult);
+                    muJKV = Regularizations.regularizeOnce(muJKV, restart, muPriorLocal, mult, memo);
                     double prev = muJKV[0];
                     for (int v = 1; v < n; v++) {
                         if (prev != muJKV[v] && prev > 0d) {
@@ -267,8 +300,10 @@ public class JHMM {
                     }
                 }
                 for (int v = 0; v < n; v++) {
-                    this.changedMu(mu[j][k][v], muJKV[v]);
-                    mu[j][k][v] = muJKV[v];
+                    if (this.changed(mu[jk + v], muJKV[v])) {
+                        result.incMuChanged();
+                    }
+                    mu[jk + v] = muJKV[v];
                     if (Double.isNaN(muJKV[v])) {
                         System.out.println("R nan, j " + j + ", k " + k);
                         for (int i = 0; i < n; i++) {
@@ -281,16 +316,19 @@ public class JHMM {
 //        }
     }
 
-    private boolean maximizeRho() {
-        boolean forceRho = false;
+    private void maximizeRho(int from, int to, MaximizationTask.Result result) {
+        double[] rho = params.getRho();
+        double[] rhoPrev = new double[K];
         double[] rhoJKL = null;
-        for (int j = 1; j < L; j++) {
+        for (int j = Math.max(1, from); j < to; j++) {
 //            if (j >= Globals.getINSTANCE().getTRAIN_WINDOW_BEGIN() && j < Globals.getINSTANCE().getTRAIN_WINDOW_END()) {
             for (int k = 0; k < K; k++) {
+                final int jk = params.rhoIndex(j - 1, k);
                 double eta = 0;
                 if (Globals.getINSTANCE().getINTERPOLATE_RHO() > 0) {
                     eta = Math.pow(Math.pow(s, 2) + 2, -Globals.getINSTANCE().getINTERPOLATE_RHO());
-                    rhoJKL = Regularizations.step(this.nJKL[j][k], this.rho[j - 1][k], eta, false);
+                    System.arraycopy(rho, jk, rhoPrev, 0, K);
+                    rhoJKL = Regularizations.step(this.nJKL[j][k], rhoPrev, eta, false);
                 } else {
                     rhoJKL = Regularizations.ml(this.nJKL[j][k]);
                 }
@@ -310,7 +348,7 @@ public class JHMM {
                     }
                 }
 
-                double mult = Globals.getINSTANCE().getMULT_RHO();
+                double mult = this.multRho;
                 if (Globals.getINSTANCE().getPRIOR() == null) {
                     double[] rhoPrior = new double[K];
                     boolean fix = false;
@@ -319,7 +357,7 @@ public class JHMM {
                             if (max > 0.5 && lPrime != k && Globals.getINSTANCE().isSPIKERHO()) {
                                 rhoPrior[l] = 100;
                                 fix = true;
-                                forceRho = true;
+                                result.forceRho();
                                 break;
                             } else {
                                 rhoPrior[l] = Globals.getINSTANCE().getALPHA_Z() * 10;
@@ -329,7 +367,7 @@ public class JHMM {
                         }
                     }
                     if (!fix) {
-                        rhoJKL = Regularizations.regularizeOnceRho(k, rhoJKL, restart, rhoPrior, mult);
+                        rhoJKL = Regularizations.regularizeOnceRho(k, rhoJKL, restart, rhoPrior, mult, memo);
                         lPrime = -1;
                         max = -1;
                         for (int l = 0; l < K; l++) {
@@ -340,7 +378,7 @@ public class JHMM {
                         }
                         if (max > 0.5 && lPrime != k && Globals.getINSTANCE().isSPIKERHO()) {
                             fix = true;
-                            forceRho = true;
+                            result.forceRho();
                         }
                     }
                     if (fix) {
@@ -353,69 +391,63 @@ public class JHMM {
                     double[] rhoPrior = new double[K];
                     for (int l = 0; l < K; l++) {
                         rhoPrior[l] = Globals.getINSTANCE().getALPHA_Z();
-                        rhoJKL = Regularizations.regularizeOnceRho(k, rhoJKL, restart, rhoPrior, mult);
+                        rhoJKL = Regularizations.regularizeOnceRho(k, rhoJKL, restart, rhoPrior, mult, memo);
                     }
                 }
                 for (int l = 0; l < K; l++) {
-                    this.changedRho(rho[j - 1][k][l], rhoJKL[l]);
-                    rho[j - 1][k][l] = rhoJKL[l];
+                    if (this.changed(rho[jk + l], rhoJKL[l])) {
+                        result.incRhoChanged();
+                    }
+                    rho[jk + l] = rhoJKL[l];
                 }
             }
         }
 //        }
-        return forceRho;
     }
 
-    private void maximizePi() {
-        StringBuilder sb = new StringBuilder();
-        double[][] piTmp = new double[L][K];
+    private void maximizePi(int from, int to, StringBuilder sb) {
+        double[] pi = params.getPi();
+        double[] piPrev = new double[K];
+        double[] piTmp = new double[K];
         double eta = Math.pow(s + 2, -1);
-        for (int j = 0; j < L; j++) {
+        for (int j = from; j < to; j++) {
 //            if (j >= Globals.getINSTANCE().getTRAIN_WINDOW_BEGIN() && j < Globals.getINSTANCE().getTRAIN_WINDOW_END()) {
             double sum_j = 0;
+            Arrays.fill(piTmp, 0d);
             for (int k = 0; k < K; k++) {
                 double sum = 0d;
                 for (int v = 0; v < n; v++) {
-                    piTmp[j][k] += this.nJKV[j][k][v];
+                    piTmp[k] += this.nJKV[j][k][v];
                     sum += this.nJKV[j][k][v];;
                     sum_j += this.nJKV[j][k][v];;
                 }
                 sb.append(sum).append("\t");
             }
             for (int k = 0; k < K; k++) {
-                piTmp[j][k] /= sum_j;
+                piTmp[k] /= sum_j;
             }
-            pi[j] = Regularizations.step(piTmp[j], pi[j], eta, false);
+            System.arraycopy(pi, params.piIndex(j), piPrev, 0, K);
+            System.arraycopy(Regularizations.step(piTmp, piPrev, eta, false), 0, pi, params.piIndex(j), K);
             sb.setLength(sb.length() - 1);
             sb.append("\n");
         }
 //        }
-        Utils.saveFile(Globals.getINSTANCE().getSAVEPATH() + "piDist.txt", sb.toString());
-//        double eta = Math.pow(s + 2, -1);
-//        pi = Regularizations.step(piTmp, pi, eta, false);
     }
 
-    private void mStep() {
-        this.computeSNVPosterior();
-        boolean forceRho = false;
-        if (!Globals.getINSTANCE().isNO_RECOMB()) {
-            forceRho = this.maximizeRho();
-        }
-        this.maximizePi();
-        this.maximizeMu();
-        if (forceRho) {
-            for (int j = 0; j < L; j++) {
-                for (int k = 0; k < K; k++) {
-                    double sum = 0;
-                    for (int v = 0; v < n; v++) {
-                        this.mu[j][k][v] += Math.random() / 100d;
-                        sum += this.mu[j][k][v];
-                    }
-                    for (int v = 0; v < n; v++) {
-                        this.mu[j][k][v] /= sum;
-                    }
-                }
-            }
+    /**
+     * The M-step is partitioned into blocks of positions that are maximized
+     * concurrently on the fork/join pool. Counters are summed and the piDist
+     * lines are concatenated in block order.
+     */
+    void mStep() {
+        MaximizationTask.Result result = Globals.getINSTANCE().getFjPool().invoke(new MaximizationTask(this, 0, MaximizationTask.blocks(L)));
+        this.muChanged += result.getMuChanged();
+        this.rhoChanged += result.getRhoChanged();
+        Utils.saveFile(Globals.getINSTANCE().getSAVEPATH() + "piDist.txt", result.getPiDist().toString());
+//        double eta = Math.pow(s + 2, -1);
+//        pi = Regularizations.step(piTmp, pi, eta, false);
+        if (result.isForceRho()) {
+            this.perturbMu(false, 100d);
         }
         if (Globals.getINSTANCE().isBIAS_MU()) {
             int currentFlatMu = getMuFlats();
@@ -442,50 +474,67 @@ public class JHMM {
             }
             oldFlatMu = currentFlatMu;
         }
-        if (!Globals.getINSTANCE().isFLAT_EPSILON_PRIOR()) {
-            this.maximizeEps();
-        }
+        this.emissions.update(params);
     }
 
     public void biasMu() {
-        for (int j = 0; j < L; j++) {
-            boolean flat = false;
-            for (int k = 0; k < K; k++) {
-                double max = 0;
-                double sum = 0;
-                for (int v = 0; v < n; v++) {
-                    max = Math.max(this.mu[j][k][v], max);
-                    sum += this.mu[j][k][v];
-                }
-                if (max < sum) {
-                    flat = true;
-                    break;
-                }
-            }
-            if (flat) {
-                for (int k = 0; k < K; k++) {
+        this.perturbMu(true, 10d);
+    }
+
+    /**
+     * Adds uniform noise to the emission probabilities. Each block of
+     * positions draws from its own generator, which is seeded by the seed of
+     * this HMM, the iteration and the block, thus the perturbation does not
+     * depend on the number of threads.
+     *
+     * @param flatOnly only perturb positions with a flat generator
+     * @param scale the noise is drawn from [0, 1 / scale)
+     */
+    private void perturbMu(boolean flatOnly, double scale) {
+        double[] mu = params.getMu();
+        for (int block = 0; block < MaximizationTask.blocks(L); block++) {
+            Randoms rnd = Random.randoms(this.seed + 0x9E3779B97F4A7C15L * (((long) s << 32) + block) + (flatOnly ? 1 : 0));
+            for (int j = block * MaximizationTask.BLOCK; j < Math.min(L, (block + 1) * MaximizationTask.BLOCK); j++) {
+                boolean flat = !flatOnly;
+                for (int k = 0; k < K && !flat; k++) {
+                    final int jk = params.muIndex(j, k);
+                    double max = 0;
                     double sum = 0;
                     for (int v = 0; v < n; v++) {
-                        this.mu[j][k][v] += Math.random() / 10d;
-                        sum += this.mu[j][k][v];
+                        max = Math.max(mu[jk + v], max);
+                        sum += mu[jk + v];
                     }
-                    for (int v = 0; v < n; v++) {
-                        this.mu[j][k][v] /= sum;
+                    if (max < sum) {
+                        flat = true;
+                    }
+                }
+                if (flat) {
+                    for (int k = 0; k < K; k++) {
+                        final int jk = params.muIndex(j, k);
+                        double sum = 0;
+                        for (int v = 0; v < n; v++) {
+                            mu[jk + v] += rnd.nextDouble() / scale;
+                            sum += mu[jk + v];
+                        }
+                        for (int v = 0; v < n; v++) {
+                            mu[jk + v] /= sum;
+                        }
                     }
                 }
             }
         }
     }
 
-    private void maximizeEps() {
+    private void maximizeEps(int from, int to) {
         double a = 20;
         double b = 2357;//(-a * ew + a + 2 * ew - 1) / ew;//double ew = .008;
-        for (int j = 0; j < L; j++) {
-            this.eps[j] = Regularizations.f(this.nneqPos[j] + a) / Regularizations.f((coverage[j] * (n - 1)) + a + b);
-            if (this.eps[j] > 1d / n) {
-                this.eps[j] = 0.05;
+        double[] eps = params.getEps();
+        for (int j = from; j < to; j++) {
+            eps[j] = Regularizations.f(this.nneqPos[j] + a, memo) / Regularizations.f((coverage[j] * (n - 1)) + a + b, memo);
+            if (eps[j] > 1d / n) {
+                eps[j] = 0.05;
             }
-            this.antieps[j] = 1 - (n - 1) * eps[j];
+            params.updateAntieps(j);
         }
     }
 
@@ -500,6 +549,7 @@ public class JHMM {
         Set<Pair<Integer, Integer>> a = new HashSet<>();
         double min = Double.MAX_VALUE;
         Pair<Integer, Integer> argMin = null;
+        double[][][] mu = this.getMu();
         for (int k = 0; k < K; k++) {
             for (int l = 0; l < K; l++) {
                 if (k != l) {
@@ -517,48 +567,59 @@ public class JHMM {
         return Triplet.with(argMin.getValue0(), argMin.getValue1(), min);
     }
 
-    protected void changedMu(double a, double b) {
-        if (Math.abs(a - b) > Globals.getINSTANCE().getPCHANGE()) {
-            this.muChanged++;
-        }
-    }
-
-    protected void changedRho(double a, double b) {
-        if (Math.abs(a - b) > Globals.getINSTANCE().getPCHANGE()) {
-            this.rhoChanged++;
-        }
+    protected boolean changed(double a, double b) {
+        return Math.abs(a - b) > Globals.getINSTANCE().getPCHANGE();
     }
 
-    protected final void prepare(Read[] reads, int N, int L, int K, int n, double[][][] rho, double[][] pi, double[][][] mu) {
+    protected final void prepare(Read[] reads, int N, int L, int K, int n, double[] eps, double[][][] rho, double[][] pi, double[][][] mu, long seed) {
         this.N = N;
         this.L = L;
         this.K = K;
         this.n = n;
         this.allReads = reads;
-        this.rho = rho;
-        this.rho_old = rho;
-        this.mu = mu;
-        this.mu_old = mu;
-        this.pi = pi;
+        this.nJKL = new double[L][K][K];
+        this.nJKV = new double[L][K][n];
+        this.nneqPos = new double[L];
+        this.maxReadLength = 0;
+        for (Read r : reads) {
+            this.maxReadLength = Math.max(this.maxReadLength, r.getLength());
+        }
+        this.params = new JHMMParams(L, K, n, rho, pi, mu, eps);
+        this.emissions.update(params);
         this.snv = new double[L][n];
         this.muPrior = new double[n];
         for (int i = 0; i < n; i++) {
             this.muPrior[i] = Globals.getINSTANCE().getALPHA_H();
         }
+        //hyperparameters of zero counts, mu priors are scaled by 10 in maximizeMu
+        double[] offsets = new double[10];
+        offsets[0] = Globals.getINSTANCE().getALPHA_Z();
+        offsets[1] = Globals.getINSTANCE().getALPHA_Z() * 10;
+        offsets[2] = Globals.getINSTANCE().getALPHA_H();
+        for (int i = 3; i < offsets.length; i++) {
+            offsets[i] = offsets[i - 1] * 10;
+        }
+        this.memo = new ExpDigammaMemo(offsets);
 
         this.coverage = Globals.getINSTANCE().getTAU_OMEGA().getCoverage();
+        this.engine = ForwardBackwardEngines.get(Globals.getINSTANCE().getENGINE());
         this.paired = Globals.getINSTANCE().isPAIRED();
+        this.multMu = Globals.getINSTANCE().getMULT_MU();
+        this.multRho = Globals.getINSTANCE().getMULT_RHO();
+        this.seed = seed;
     }
 
     public int getMuFlats() {
+        double[] mu = params.getMu();
         int flats = 0;
         for (int j = 0; j < L; j++) {
             for (int k = 0; k < K; k++) {
+                final int jk = params.muIndex(j, k);
                 double max = 0;
                 double sum = 0;
                 for (int v = 0; v < n; v++) {
-                    max = Math.max(this.mu[j][k][v], max);
-                    sum += this.mu[j][k][v];
+                    max = Math.max(mu[jk + v], max);
+                    sum += mu[jk + v];
 //                    max = Math.max(this.nJKV[j][k][v], max);
 //                    sum += this.nJKV[j][k][v];
                 }
@@ -589,14 +650,16 @@ public class JHMM {
     }
 
     public int getRhoFlats() {
+        double[] rho = params.getRho();
         int flats = 0;
         for (int j = 0; j < L - 1; j++) {
             for (int k = 0; k < K; k++) {
+                final int jk = params.rhoIndex(j, k);
                 double max = 0;
                 double sum = 0;
                 for (int l = 0; l < K; l++) {
-                    max = Math.max(this.rho[j][k][l], max);
-                    sum += this.rho[j][k][l];
+                    max = Math.max(rho[jk + l], max);
+                    sum += rho[jk + l];
                 }
                 if (max < sum) {
                     flats++;
@@ -640,34 +703,101 @@ public class JHMM {
         return n;
     }
 
+    public int getMaxReadLength() {
+        return maxReadLength;
+    }
+
+    /**
+     * @return the expected counts of stripe s of the current partition plan
+     */
+    public ParallelJHMMStorage getStorage(int s) {
+        return storages[s];
+    }
+
+    public ForwardBackwardEngine getEngine() {
+        return engine;
+    }
+
+    public JHMMParams getParams() {
+        return params;
+    }
+
+    ExpDigammaMemo getMemo() {
+        return memo;
+    }
+
+    public EmissionTable getEmissions() {
+        return emissions;
+    }
+
+    /**
+     * Replaces all parameters, e.g. by an extrapolated point, and rebuilds the
+     * emission table.
+     *
+     * @param theta parameters in the layout of {@link JHMMParams#toVector()}
+     */
+    public void setParameters(double[] theta) {
+        this.params.fromVector(theta);
+        this.emissions.update(params);
+    }
+
     public double[] getEps() {
-        return eps;
+        return params.getEps();
     }
 
     public double[] getAntieps() {
-        return antieps;
+        return params.getAntieps();
     }
 
     public double getLoglikelihood() {
         return loglikelihood;
     }
 
+    /**
+     * @return a jagged copy of the emission probabilities
+     */
     public double[][][] getMu() {
-        return mu;
+        return params.exportMu();
     }
 
+    /**
+     * @return a jagged copy of the start probabilities
+     */
     public double[][] getPi() {
-        return pi;
+        return params.exportPi();
     }
 
+    /**
+     * @return a jagged copy of the transition probabilities
+     */
     public double[][][] getRho() {
-        return rho;
+        return params.exportRho();
     }
 
     public int getRestart() {
         return restart;
     }
 
+    /**
+     * @return number of iterations, the random perturbations of the M-step
+     * depend on it
+     */
+    int getStep() {
+        return s;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the state of the BIAS_MU heuristic: the last number of flat
+     * emissions, whether it biases, the bias and the unbias counter
+     */
+    int[] exportBias() {
+        return new int[]{oldFlatMu, biasMu ? 1 : 0, biasCounter, unBiasCounter};
+    }
+
     public int getMuChanged() {
         return muChanged;
     }
@@ -691,4 +821,20 @@ public class JHMM {
     public void setBeta(double beta) {
         this.beta = beta;
     }
+
+    public double getMultMu() {
+        return multMu;
+    }
+
+    public void setMultMu(double multMu) {
+        this.multMu = multMu;
+    }
+
+    public double getMultRho() {
+        return multRho;
+    }
+
+    public void setMultRho(double multRho) {
+        this.multRho = multRho;
+    }
 }
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+/**
+ * Packed, row-major parameter store of the jumping HMM.
+ *
+ * <ul>
+ * <li>rho[j][k][l] is stored at (j * K + k) * K + l</li>
+ * <li>mu[j][k][v] is stored at (j * K + k) * n + v</li>
+ * <li>pi[j][k] is stored at j * K + k</li>
+ * </ul>
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class JHMMParams {
+
+    private final int L;
+    private final int K;
+    private final int n;
+    private final int rhoRows;
+    private final double[] rho;
+    private final double[] mu;
+    private final double[] pi;
+    private final double[] eps;
+    private final double[] antieps;
+
+    public JHMMParams(int L, int K, int n, double[][][] rho, double[][] pi, double[][][] mu, double[] eps) {
+        this.L = L;
+        this.K = K;
+        this.n = n;
+        this.rhoRows = rho.length;
+        this.rho = new double[rhoRows * K * K];
+        this.mu = new double[L * K * n];
+        this.pi = new double[L * K];
+        this.eps = new double[L];
+        this.antieps = new double[L];
+        for (int j = 0; j < rhoRows; j++) {
+            for (int k = 0; k < K; k++) {
+                System.arraycopy(rho[j][k], 0, this.rho, rhoIndex(j, k), K);
+            }
+        }
+        for (int j = 0; j < L; j++) {
+            for (int k = 0; k < K; k++) {
+                System.arraycopy(mu[j][k], 0, this.mu, muIndex(j, k), n);
+            }
+            System.arraycopy(pi[j], 0, this.pi, piIndex(j), K);
+            this.eps[j] = eps[j];
+            this.updateAntieps(j);
+        }
+    }
+
+    public final int rhoIndex(int j, int k) {
+        return (j * K + k) * K;
+    }
+
+    public final int muIndex(int j, int k) {
+        return (j * K + k) * n;
+    }
+
+    public final int piIndex(int j) {
+        return j * K;
+    }
+
+    public final void updateAntieps(int j) {
+        this.antieps[j] = 1 - (n - 1) * eps[j];
+    }
+
+    /**
+     * @return a copy of all parameters, i.e. rho, mu, pi and eps in this order
+     */
+    public double[] toVector() {
+        double[] theta = new double[rho.length + mu.length + pi.length + eps.length];
+        System.arraycopy(rho, 0, theta, 0, rho.length);
+        System.arraycopy(mu, 0, theta, rho.length, mu.length);
+        System.arraycopy(pi, 0, theta, rho.length + mu.length, pi.length);
+        System.arraycopy(eps, 0, theta, rho.length + mu.length + pi.length, eps.length);
+        return theta;
+    }
+
+    /**
+     * Sets all parameters from a vector in the layout of {@link #toVector()}.
+     */
+    public void fromVector(double[] theta) {
+        System.arraycopy(theta, 0, rho, 0, rho.length);
+        System.arraycopy(theta, rho.length, mu, 0, mu.length);
+        System.arraycopy(theta, rho.length + mu.length, pi, 0, pi.length);
+        System.arraycopy(theta, rho.length + mu.length + pi.length, eps, 0, eps.length);
+        for (int j = 0; j < L; j++) {
+            this.updateAntieps(j);
+        }
+    }
+
+    /**
+     * Moves a vector in the layout of {@link #toVector()} back into the
+     * parameter space. Every distribution of rho, mu and pi is clipped at zero
+     * and renormalized, eps is clipped to [0, 1 / n]. Distributions without
+     * any positive entry are taken from fallback.
+     *
+     * @param theta vector to project in place
+     * @param fallback valid parameters in the same layout
+     */
+    public void project(double[] theta, double[] fallback) {
+        int offset = 0;
+        offset = projectRows(theta, fallback, offset, rhoRows * K, K);
+        offset = projectRows(theta, fallback, offset, L * K, n);
+        offset = projectRows(theta, fallback, offset, L, K);
+        for (int j = 0; j < L; j++) {
+            if (!(theta[offset + j] >= 0d && theta[offset + j] <= 1d / n)) {
+                theta[offset + j] = fallback[offset + j];
+            }
+        }
+    }
+
+    private static int projectRows(double[] theta, double[] fallback, int offset, int rows, int width) {
+        for (int r = 0; r < rows; r++, offset += width) {
+            double sum = 0d;
+            for (int i = offset; i < offset + width; i++) {
+                theta[i] = Math.max(0d, theta[i]);
+                sum += theta[i];
+            }
+            if (sum > 0d && !Double.isInfinite(sum)) {
+                for (int i = offset; i < offset + width; i++) {
+                    theta[i] /= sum;
+                }
+            } else {
+                System.arraycopy(fallback, offset, theta, offset, width);
+            }
+        }
+        return offset;
+    }
+
+    public double[][][] exportRho() {
+        double[][][] r = new double[rhoRows][K][K];
+        for (int j = 0; j < rhoRows; j++) {
+            for (int k = 0; k < K; k++) {
+                System.arraycopy(this.rho, rhoIndex(j, k), r[j][k], 0, K);
+            }
+        }
+        return r;
+    }
+
+    public double[][][] exportMu() {
+        double[][][] m = new double[L][K][n];
+        for (int j = 0; j < L; j++) {
+            for (int k = 0; k < K; k++) {
+                System.arraycopy(this.mu, muIndex(j, k), m[j][k], 0, n);
+            }
+        }
+        return m;
+    }
+
+    public double[][] exportPi() {
+        double[][] p = new double[L][K];
+        for (int j = 0; j < L; j++) {
+            System.arraycopy(this.pi, piIndex(j), p[j], 0, K);
+        }
+        return p;
+    }
+
+    public int getL() {
+        return L;
+    }
+
+    public int getK() {
+        return K;
+    }
+
+    public int getn() {
+        return n;
+    }
+
+    public int getRhoRows() {
+        return rhoRows;
+    }
+
+    public double[] getRho() {
+        return rho;
+    }
+
+    public double[] getMu() {
+        return mu;
+    }
+
+    public double[] getPi() {
+        return pi;
+    }
+
+    public double[] getEps() {
+        return eps;
+    }
+
+    public double[] getAntieps() {
+        return antieps;
+    }
+}
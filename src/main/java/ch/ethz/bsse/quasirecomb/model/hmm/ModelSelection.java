@@ -34,6 +34,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Selects the best model among the specified range of generators.
@@ -71,7 +72,11 @@ public class ModelSelection {
     private void start(Read[] reads) {
         double optBIC = 0;
         String save = Globals.getINSTANCE().getSAVEPATH() + "support";
-        Utils.mkdir(Globals.getINSTANCE().getSnapshotDir());
+        //snapshots are only written on request, the results stay in memory
+        boolean snapshots = Globals.getINSTANCE().isSNAPSHOTS() || Globals.getINSTANCE().isDEBUG();
+        if (snapshots) {
+            Utils.mkdir(Globals.getINSTANCE().getSnapshotDir());
+        }
 
         if (Globals.getINSTANCE().getSUB_SAMPLE_PERC() > 0d) {
             shuffleArray(reads);
@@ -86,7 +91,9 @@ public class ModelSelection {
         if (!Globals.getINSTANCE().isUSER_OPTIMUM()) {
             if (kMin != kMax) {
                 Globals.getINSTANCE().setMODELSELECTION(true);
-                Utils.mkdir(Globals.getINSTANCE().getSnapshotDir() + File.separator + "modelselection");
+                if (snapshots) {
+                    Utils.mkdir(Globals.getINSTANCE().getSnapshotDir() + File.separator + "modelselection");
+                }
                 select(reads, save);
                 saveBics();
                 Utils.saveR();
@@ -96,11 +103,12 @@ public class ModelSelection {
         }
         Globals.getINSTANCE().setMODELSELECTION(false);
 //        if (!Globals.getINSTANCE().isBOOTSTRAP()) {
-        Utils.mkdir(Globals.getINSTANCE().getSnapshotDir() + File.separator + "training");
+        if (snapshots) {
+            Utils.mkdir(Globals.getINSTANCE().getSnapshotDir() + File.separator + "training");
+        }
         Globals.getINSTANCE().setREPEATS(Globals.getINSTANCE().getDESIRED_REPEATS());
 
         if (Globals.getINSTANCE().getDESIRED_REPEATS() > 0) {
-            StatusUpdate.getINSTANCE().setPERCENTAGE(0);
             if (Globals.getINSTANCE().isSUBSAMPLE()) {
                 shuffleArray(reads);
                 List<Read> subsample = new LinkedList<>();
@@ -187,12 +195,39 @@ public class ModelSelection {
         return or;
     }
 
+    /**
+     * Trains one K after the other and stops as soon as the BIC decreases. With
+     * LOOKAHEAD > 0 the next larger K are trained speculatively on the
+     * fork/join pool while the current K is still running. Results are still
+     * committed strictly in the order of K, thus the stop rule is the same as
+     * in the sequential case and speculative runs beyond the stop are
+     * cancelled. With WARM_START the restarts of K are initialized from the
+     * optimum of K - 1, except for speculative runs, which start before that
+     * optimum is known. With -resume, K that have been finished by the
+     * interrupted run are taken from their checkpoint.
+     */
     private void select(Read[] reads, String save) {
+        int lookahead = Globals.getINSTANCE().getLOOKAHEAD();
+        Map<Integer, Evaluation> pending = new HashMap<>();
+        OptimalResult warmStart = null;
         for (int k = kMin; k <= kMax; k++) {
             if (!Globals.getINSTANCE().isFORCE_NO_RECOMB()) {
                 checkRho0(k);
             }
-            EM em = new EM(this.N, this.L, k, this.n, reads);
+            Evaluation current = pending.remove(k);
+            EM resumed = Checkpoint.loadK(k, this.L, this.n);
+            for (int m = k + 1; m <= Math.min(kMax, k + lookahead); m++) {
+                if (!pending.containsKey(m) && noRecomb(m) == noRecomb(k) && !Checkpoint.hasK(m)) {
+                    Evaluation speculative = new Evaluation(reads, m);
+                    Globals.getINSTANCE().getFjPool().submit(speculative);
+                    pending.put(m, speculative);
+                }
+            }
+            EM em = resumed;
+            if (em == null) {
+                em = current == null ? new EM(this.N, this.L, k, this.n, reads, new RunState(), warmStart) : current.join();
+                Checkpoint.saveK(k, em);
+            }
             System.out.println("");
             if (Globals.getINSTANCE().isLOG_BIC()) {
                 StringBuilder sb = new StringBuilder();
@@ -201,15 +236,51 @@ public class ModelSelection {
             }
             bics.put(k, em.getBics());
             msTemp.add(em, k);
-            StatusUpdate.getINSTANCE().setPERCENTAGE(0);
+            if (Globals.getINSTANCE().isWARM_START()) {
+                warmStart = em.getOr();
+            }
             or = msTemp.getBestOR();
             if (!Globals.getINSTANCE().isBOOTSTRAP() && or.getK() < k && or.getK() + 1 == k) {
                 break;
             }
         }
+        for (Evaluation speculative : pending.values()) {
+            speculative.state.cancel();
+        }
+        for (Evaluation speculative : pending.values()) {
+            speculative.join();
+        }
         bestK = or.getK();
     }
 
+    /**
+     * NO_RECOMB is process-wide, thus runs with and without recombination must
+     * not overlap.
+     */
+    private static boolean noRecomb(int K) {
+        return K == 1 || Globals.getINSTANCE().isFORCE_NO_RECOMB();
+    }
+
+    /**
+     * Speculative EM run for a single K.
+     */
+    private class Evaluation extends RecursiveTask<EM> {
+
+        private final Read[] reads;
+        private final int K;
+        private final RunState state = new RunState();
+
+        Evaluation(Read[] reads, int K) {
+            this.reads = reads;
+            this.K = K;
+        }
+
+        @Override
+        protected EM compute() {
+            return new EM(N, L, K, n, reads, state);
+        }
+    }
+
     public void saveBics() {
         StringBuilder sb = new StringBuilder();
         int x = bics.values().iterator().next().length;
@@ -26,16 +26,32 @@ import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
 public class ReadHMMStatic {
 
     public static double computeFB(JHMM jhmm, Read read, ParallelJHMMStorage storage) {
+        ForwardBackwardWorkspace ws = ForwardBackwardWorkspace.getLocal();
+        ws.ensureCapacity(read.getLength(), jhmm.getK(), jhmm.getn());
+        return computeFB(jhmm, read, storage, ws);
+    }
+
+    public static double computeFB(JHMM jhmm, Read read, ParallelJHMMStorage storage, ForwardBackwardWorkspace ws) {
         try {
             int begin = read.getBegin();
 
             int length = read.getLength();
+            storage.markSpan(begin, begin + length);
             int K = jhmm.getK();
             int n = jhmm.getn();
-            double[][][] fJKV = new double[length][K][n];
-            double[][] fJK = new double[length][K];
-            double[][] bJK = new double[length][K];
-            double[] c = new double[length];
+            JHMMParams params = jhmm.getParams();
+            double[] rho = params.getRho();
+            double[] mu = params.getMu();
+            double[] pi = params.getPi();
+            double[] eps = params.getEps();
+            double[] antieps = params.getAntieps();
+            EmissionTable emissions = jhmm.getEmissions();
+            double[] marginal = emissions.getMarginal();
+            double[] mismatch = emissions.getMismatch();
+            double[] fJKV = ws.fJKV;
+            double[] fJK = ws.fJK;
+            double[] bJK = ws.bJK;
+            double[] c = ws.c;
             double likelihood = 0;
 
             /*Forward*/
@@ -48,42 +64,42 @@ public class ReadHMMStatic {
                     q = read.getQuality(j);
                 }
                 int jGlobal = j + begin;
-
-//                if (jGlobal < Globals.getINSTANCE().getTRAIN_WINDOW_BEGIN() || jGlobal >= Globals.getINSTANCE().getTRAIN_WINDOW_END()) {
-//                    free(jhmm, storage);
-//                    return 0;
-//                }
+                int jK = j * K;
+                c[j] = 0d;
                 for (int k = 0; k < K; k++) {
-
-                    for (int v = 0; v < n; v++) {
-                        if (j == 0) {
-                            fJKV[j][k][v] = jhmm.getPi()[jGlobal][k];
-                        } else {
-                            double sumL = 0d;
-                            for (int l = 0; l < K; l++) {
-                                sumL += fJK[j - 1][l] * jhmm.getRho()[jGlobal - 1][l][k];
-                            }
-                            fJKV[j][k][v] = sumL;
+                    fJK[jK + k] = 0d;
+                    int jkn = (jK + k) * n;
+                    double prior;
+                    if (j == 0) {
+                        prior = pi[jGlobal * K + k];
+                    } else {
+                        prior = 0d;
+                        for (int l = 0; l < K; l++) {
+                            prior += fJK[jK - K + l] * rho[((jGlobal - 1) * K + l) * K + k];
                         }
+                    }
+                    for (int v = 0; v < n; v++) {
+                        int jkv = jkn + v;
+                        fJKV[jkv] = prior;
 
                         if (hit) {
                             if (q < 1) {
 //                                fJKV[j][k][v] *= (b == v ? jhmm.getAntieps()[jGlobal] * (1 - (jhmm.getn() - 1) * (1 - q)) : jhmm.getEps()[jGlobal] * (1 - q));
-                                fJKV[j][k][v] *= (b == v ? jhmm.getAntieps()[jGlobal] * q : jhmm.getEps()[jGlobal] * (1 - q) / (double) n);
+                                fJKV[jkv] *= (b == v ? antieps[jGlobal] * q : eps[jGlobal] * (1 - q) / (double) n);
                             } else {
-                                fJKV[j][k][v] *= (b == v ? jhmm.getAntieps()[jGlobal] : jhmm.getEps()[jGlobal]);
+                                fJKV[jkv] *= (b == v ? antieps[jGlobal] : eps[jGlobal]);
                             }
-                            fJKV[j][k][v] *= jhmm.getMu()[jGlobal][k][v];
-//                            fJKV[j][k][v] *= q;
+                            fJKV[jkv] *= mu[(jGlobal * K + k) * n + v];
                         }
-                        c[j] += fJKV[j][k][v];
+                        c[j] += fJKV[jkv];
                     }
                 }
                 c[j] = 1d / c[j];
                 for (int k = 0; k < K; k++) {
+                    int jkn = (jK + k) * n;
                     for (int v = 0; v < n; v++) {
-                        fJKV[j][k][v] *= c[j];
-                        fJK[j][k] += fJKV[j][k][v];
+                        fJKV[jkn + v] *= c[j];
+                        fJK[jK + k] += fJKV[jkn + v];
                     }
                 }
             }
@@ -95,6 +111,7 @@ public class ReadHMMStatic {
                     likelihood += Math.log(1d / c[j]);
                 }
                 int jGlobal = j + begin;
+                int jK = j * K;
                 double gammaSum = 0d;
                 byte b = -1;
                 double q = 1;
@@ -103,47 +120,47 @@ public class ReadHMMStatic {
                     q = read.getQuality(j + 1);
                 }
                 for (int k = 0; k < K; k++) {
+                    int jk = jK + k;
                     if (j == length - 1) {
-                        bJK[j][k] = c[j];
+                        bJK[jk] = c[j];
                     } else {
-                        bJK[j][k] = 0;
+                        bJK[jk] = 0;
                         for (int l = 0; l < K; l++) {
                             if (hit1) {
-                                double sumV = 0d;
-                                for (int v = 0; v < n; v++) {
-                                    if (q < 1) {
-//                                        sumV += (b == v ? jhmm.getAntieps()[jGlobal + 1] * (1 - (jhmm.getn() - 1) * (1 - q)) : jhmm.getEps()[jGlobal + 1] * (1 - q)) * jhmm.getMu()[jGlobal + 1][l][v];
-                                        sumV += (b == v ? jhmm.getAntieps()[jGlobal + 1] * q : jhmm.getEps()[jGlobal + 1] * (1 - q) / (double) n) * jhmm.getMu()[jGlobal + 1][l][v];
-                                    } else {
-                                        sumV += (b == v ? jhmm.getAntieps()[jGlobal + 1] : jhmm.getEps()[jGlobal + 1]) * jhmm.getMu()[jGlobal + 1][l][v];
-                                    }
+                                int e = emissions.index(jGlobal + 1, l, b);
+                                double sumV;
+                                if (q < 1) {
+                                    double muB = b < n ? mu[((jGlobal + 1) * K + l) * n + b] : 0d;
+                                    sumV = antieps[jGlobal + 1] * q * muB + eps[jGlobal + 1] * (1 - q) / (double) n * mismatch[e];
+                                } else {
+                                    sumV = marginal[e];
                                 }
-//                                sumV *= q;
-                                bJK[j][k] += sumV * jhmm.getRho()[jGlobal][k][l] * bJK[j + 1][l];
+                                bJK[jk] += sumV * rho[(jGlobal * K + k) * K + l] * bJK[jK + K + l];
                             } else {
-                                bJK[j][k] += jhmm.getRho()[jGlobal][k][l] * bJK[j + 1][l];
+                                bJK[jk] += rho[(jGlobal * K + k) * K + l] * bJK[jK + K + l];
                             }
                         }
-                        bJK[j][k] *= c[j];
+                        bJK[jk] *= c[j];
                     }
-                    if (Double.isInfinite(bJK[j][k])) {
+                    if (Double.isInfinite(bJK[jk])) {
                         //this is infinite, because the char has not been observed and there no probability to emit it
                         //thus we divide 0 by a very small number, i.e. 1e-300.
-                        bJK[j][k] = 0d;
+                        bJK[jk] = 0d;
                     }
-                    gammaSum += fJK[j][k] * bJK[j][k];
+                    gammaSum += fJK[jk] * bJK[jk];
                 }
                 if (hit) {
                     b = read.getBase(j);
                     double xiSum = 0d;
                     for (int k = 0; k < K; k++) {
+                        int jkn = (jK + k) * n;
                         if (gammaSum == 0) {
                             for (int v = 0; v < n; v++) {
                                 storage.addnJKV(jGlobal, k, v, ((double) read.getCount()) / n);
                             }
                         } else {
                             for (int v = 0; v < n; v++) {
-                                double gamma = read.getCount() * fJKV[j][k][v] * bJK[j][k] / gammaSum;
+                                double gamma = read.getCount() * fJKV[jkn + v] * bJK[jK + k] / gammaSum;
                                 storage.addnJKV(jGlobal, k, v, gamma);
                                 if (b != v) {
                                     storage.addnneqPos(j, gamma);
@@ -152,11 +169,8 @@ public class ReadHMMStatic {
                         }
                         if (j > 0) {
                             for (int l = 0; l < K; l++) {
-                                double marginalV = 0d;
-                                for (int v = 0; v < n; v++) {
-                                    marginalV += (b == v ? jhmm.getAntieps()[jGlobal] : jhmm.getEps()[jGlobal]) * jhmm.getMu()[jGlobal][l][v];
-                                }
-                                double xi = fJK[j - 1][k] * jhmm.getRho()[jGlobal - 1][k][l] * marginalV * bJK[j][l];
+                                double marginalV = marginal[emissions.index(jGlobal, l, b)];
+                                double xi = fJK[jK - K + k] * rho[((jGlobal - 1) * K + k) * K + l] * marginalV * bJK[jK + l];
                                 xiSum += xi;
                             }
                         }
@@ -164,11 +178,8 @@ public class ReadHMMStatic {
                     for (int k = 0; k < K; k++) {
                         if (xiSum != 0 && j > 0) {
                             for (int l = 0; l < K; l++) {
-                                double marginalV = 0d;
-                                for (int v = 0; v < n; v++) {
-                                    marginalV += (b == v ? jhmm.getAntieps()[jGlobal] : jhmm.getEps()[jGlobal]) * jhmm.getMu()[jGlobal][l][v];
-                                }
-                                double xi = read.getCount() * fJK[j - 1][k] * jhmm.getRho()[jGlobal - 1][k][l] * marginalV * bJK[j][l] / xiSum;
+                                double marginalV = marginal[emissions.index(jGlobal, l, b)];
+                                double xi = read.getCount() * fJK[jK - K + k] * rho[((jGlobal - 1) * K + k) * K + l] * marginalV * bJK[jK + l] / xiSum;
                                 storage.addnJKL(jGlobal, k, l, xi);
                             }
                         }
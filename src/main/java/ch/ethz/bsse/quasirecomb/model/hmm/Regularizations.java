@@ -17,7 +17,8 @@
  */
 package ch.ethz.bsse.quasirecomb.model.hmm;
 
-import cc.mallet.types.Dirichlet;
+import ch.ethz.bsse.quasirecomb.utils.SpecialFunctions;
+import ch.ethz.bsse.quasirecomb.utils.SpecialFunctions.ExpDigammaMemo;
 
 /**
  * @author Armin Töpfer (armin.toepfer [at] gmail.com)
@@ -232,7 +233,10 @@ public class Regularizations {
         return regCounts;
     }
 
-    public static double[] regularizeOnce(double[] estCounts, int restart, double[] hyperParameter, double fidelity) {
+    /**
+     * @param memo f of the hyperparameters of the model or null
+     */
+    public static double[] regularizeOnce(double[] estCounts, int restart, double[] hyperParameter, double fidelity, ExpDigammaMemo memo) {
         int x = estCounts.length;
         double[] regCounts = new double[x];
         double divisor;
@@ -267,11 +271,14 @@ public class Regularizations {
         double hyperSum = 0d;
         divisor = 0d;
         for (int i = 0; i < x; i++) {
-            regCounts[i] = f(regCounts[i] + hyperParameter[i]);
+            regCounts[i] += hyperParameter[i];
+        }
+        SpecialFunctions.expDigamma(regCounts, regCounts, 0, x, memo);
+        for (int i = 0; i < x; i++) {
             sum += regCounts[i];
             hyperSum = hyperParameter[i];
         }
-        sum = f(sum + hyperSum);
+        sum = f(sum + hyperSum, memo);
         if (sum > 0) {
             for (int i = 0; i < x; i++) {
                 regCounts[i] /= sum;
@@ -303,7 +310,10 @@ public class Regularizations {
         return regCounts;
     }
 
-    public static double[] regularizeOnceRho(int k, double[] estCounts, int restart, double[] hyperParameter, double fidelity) {
+    /**
+     * @param memo f of the hyperparameters of the model or null
+     */
+    public static double[] regularizeOnceRho(int k, double[] estCounts, int restart, double[] hyperParameter, double fidelity, ExpDigammaMemo memo) {
         int x = estCounts.length;
         double[] regCounts = new double[x];
         double divisor;
@@ -338,11 +348,14 @@ public class Regularizations {
         double hyperSum = 0d;
         divisor = 0d;
         for (int i = 0; i < x; i++) {
-            regCounts[i] = f(regCounts[i] + hyperParameter[i]);
+            regCounts[i] += hyperParameter[i];
+        }
+        SpecialFunctions.expDigamma(regCounts, regCounts, 0, x, memo);
+        for (int i = 0; i < x; i++) {
             sum += regCounts[i];
             hyperSum = hyperParameter[i];
         }
-        sum = f(sum + hyperSum);
+        sum = f(sum + hyperSum, memo);
         if (sum > 0) {
             for (int i = 0; i < x; i++) {
                 regCounts[i] /= sum;
@@ -374,10 +387,10 @@ public class Regularizations {
         return regCounts;
     }
 
-    public static double f(double upsilon) {
-        if (upsilon == 0d) {
-            return 0d;
-        }
-        return Math.exp(Dirichlet.digamma(upsilon));
+    /**
+     * @param memo f of the hyperparameters of the model or null
+     */
+    public static double f(double upsilon, ExpDigammaMemo memo) {
+        return memo == null ? SpecialFunctions.expDigamma(upsilon) : memo.get(upsilon);
     }
 }
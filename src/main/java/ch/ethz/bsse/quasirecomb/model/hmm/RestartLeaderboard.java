@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Progress of all restarts of one EM run. Restarts publish their trajectory
+ * after every iteration and their BIC when they are done. A running restart is
+ * hopeless if even the projected log-likelihood at convergence cannot beat
+ * the best BIC of the finished restarts by the confidence margin.
+ *
+ * The projection assumes that the log-likelihood gains decay geometrically,
+ * i.e. with the last gains d1 and d2 and q = d2 / d1 the remaining gain is d2
+ * * q / (1 - q). As long as the gains do not decay, no projection is made and
+ * the restart is not pruned.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class RestartLeaderboard {
+
+    /**
+     * Restarts are never pruned before this iteration.
+     */
+    public static final int MIN_ITERATIONS = 10;
+    private final Map<Integer, Entry> entries = new TreeMap<>();
+    private double bestBIC = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @return the projected log-likelihood at convergence or positive
+     * infinity if the trajectory does not allow a projection
+     */
+    public static double project(double llh0, double llh1, double llh2) {
+        double d1 = llh1 - llh0;
+        double d2 = llh2 - llh1;
+        if (d2 <= 0d) {
+            return llh2;
+        }
+        double q = d2 / d1;
+        if (!(q > 0d && q < 1d)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return llh2 + d2 * q / (1 - q);
+    }
+
+    public synchronized void publish(int repeat, int iteration, double llh, double projected) {
+        Entry e = this.entry(repeat);
+        e.iteration = iteration;
+        e.llh = llh;
+        e.projected = projected;
+    }
+
+    public synchronized void finish(int repeat, double bic) {
+        this.entry(repeat).bic = bic;
+        this.bestBIC = Math.max(this.bestBIC, bic);
+    }
+
+    public synchronized void prune(int repeat, int iteration, double projectedBIC) {
+        Entry e = this.entry(repeat);
+        e.prunedAt = iteration;
+        e.projected = projectedBIC;
+    }
+
+    /**
+     * @return the best BIC of all finished restarts
+     */
+    public synchronized double getBestBIC() {
+        return bestBIC;
+    }
+
+    /**
+     * @param projectedBIC BIC of the projected log-likelihood
+     * @param margin relative confidence margin
+     * @return whether the projection falls short of the best BIC by more than
+     * the margin
+     */
+    public synchronized boolean isHopeless(double projectedBIC, double margin) {
+        return bestBIC != Double.NEGATIVE_INFINITY && projectedBIC < bestBIC - margin * Math.abs(bestBIC);
+    }
+
+    /**
+     * @return one line per pruned restart
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Entry> e : entries.entrySet()) {
+            if (e.getValue().prunedAt > 0) {
+                sb.append("restart ").append(e.getKey()).append(" pruned at iteration ").append(e.getValue().prunedAt)
+                        .append(", projected BIC ").append(e.getValue().projected).append(", best BIC ").append(bestBIC).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    public synchronized int getPruned() {
+        int pruned = 0;
+        for (Entry e : entries.values()) {
+            if (e.prunedAt > 0) {
+                pruned++;
+            }
+        }
+        return pruned;
+    }
+
+    private Entry entry(int repeat) {
+        Entry e = entries.get(repeat);
+        if (e == null) {
+            e = new Entry();
+            entries.put(repeat, e);
+        }
+        return e;
+    }
+
+    private static class Entry {
+
+        int iteration;
+        double llh;
+        double projected;
+        double bic = Double.NaN;
+        int prunedAt;
+    }
+}
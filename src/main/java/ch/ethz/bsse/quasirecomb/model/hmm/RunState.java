@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+
+/**
+ * State shared by the restarts of one EM run, i.e. of one K. Restarts of the
+ * same run may execute concurrently, runs for different K do not share any
+ * state.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class RunState {
+
+    private double maxLLH = -1;
+    private double minBIC = Double.MAX_VALUE;
+    private int finished;
+    private volatile boolean cancelled;
+    private final RestartLeaderboard leaderboard = new RestartLeaderboard();
+
+    public synchronized double getMaxLLH() {
+        return maxLLH;
+    }
+
+    public synchronized void maxLLH(double llh) {
+        if (maxLLH == -1 || llh > maxLLH) {
+            maxLLH = llh;
+        }
+    }
+
+    public synchronized double getMinBIC() {
+        return minBIC;
+    }
+
+    public synchronized void minBIC(double bic) {
+        minBIC = Math.min(minBIC, bic);
+    }
+
+    public synchronized void finishRestart() {
+        finished++;
+    }
+
+    /**
+     * Progress of this run in percent of the configured restarts, capped at
+     * 100 because the refinement of the best restart is counted as well.
+     */
+    public synchronized int getPercentage() {
+        return (int) Math.min(100, Math.round(finished * 100d / Globals.getINSTANCE().getREPEATS()));
+    }
+
+    /**
+     * Requests running restarts to stop after their current iteration and
+     * pending restarts not to start.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public RestartLeaderboard getLeaderboard() {
+        return leaderboard;
+    }
+}
@@ -20,7 +20,8 @@ package ch.ethz.bsse.quasirecomb.model.hmm;
 import ch.ethz.bsse.quasirecomb.informationholder.Globals;
 import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
 import ch.ethz.bsse.quasirecomb.informationholder.Read;
-import ch.ethz.bsse.quasirecomb.utils.StatusUpdate;
+import ch.ethz.bsse.quasirecomb.informationholder.Threading;
+import ch.ethz.bsse.quasirecomb.utils.Random;
 import ch.ethz.bsse.quasirecomb.utils.Summary;
 import ch.ethz.bsse.quasirecomb.utils.Utils;
 import java.io.File;
@@ -36,6 +37,7 @@ public class SingleEM {
 
     private long time = -1;
     private StringBuilder sb = new StringBuilder();
+    private final StringBuilder runLog = new StringBuilder();
     private JHMM jhmm;
     private int iterations = 0;
     private int N;
@@ -50,8 +52,14 @@ public class SingleEM {
     private int Kmin;
     private double maxBIC;
     private List<Long> times = new ArrayList<>();
-
-    public SingleEM(int N, int K, int L, int n, Read[] reads, double delta, int repeat) {
+    private final RunState state;
+    private Squarem squarem;
+    private int pruned;
+    private Checkpoint.Running resume;
+    private long lastCheckpoint = System.currentTimeMillis();
+
+    public SingleEM(int N, int K, int L, int n, Read[] reads, double delta, int repeat, RunState state) {
+        this.state = state;
         this.N = N;
         this.K = K;
         this.Kmin = K;
@@ -62,15 +70,84 @@ public class SingleEM {
         this.repeat = repeat;
         time(false);
         if (Globals.getINSTANCE().isPRUNE()) {
-            jhmm = new JHMM(reads, N, L, K * 2, n, Globals.getINSTANCE().getESTIMATION_EPSILON(), K);
+            jhmm = new JHMM(reads, N, L, K * 2, n, Globals.getINSTANCE().getESTIMATION_EPSILON(), K, Random.seed(K, repeat));
         } else {
-            jhmm = new JHMM(reads, N, L, K, n, Globals.getINSTANCE().getESTIMATION_EPSILON(), K);
+            jhmm = new JHMM(reads, N, L, K, n, Globals.getINSTANCE().getESTIMATION_EPSILON(), K, Random.seed(K, repeat));
         }
         this.K = jhmm.getK();
         start();
     }
 
-    public SingleEM(OptimalResult or, double delta, Read[] reads) {
+    /**
+     * Restart from the given initial parameters instead of random ones. They
+     * are close to an optimum already, which the annealing from the initial
+     * multipliers would flatten; therefore, the restart starts at the final
+     * multipliers and beta.
+     */
+    public SingleEM(JHMMParams init, int N, Read[] reads, double delta, int repeat, RunState state) {
+        this.state = state;
+        this.N = N;
+        this.K = init.getK();
+        this.Kmin = K;
+        this.L = init.getL();
+        this.n = init.getn();
+        this.delta = delta;
+        this.reads = reads;
+        this.repeat = repeat;
+        time(false);
+        boolean gradient = Globals.getINSTANCE().isGRADIENT();
+        jhmm = new JHMM(reads, N, init, K, Random.seed(K, repeat),
+                gradient ? Globals.getINSTANCE().getMULT_MU_MIN() : Globals.getINSTANCE().getMULT_MU(),
+                gradient ? Globals.getINSTANCE().getMULT_RHO_MIN() : Globals.getINSTANCE().getMULT_RHO(), 1);
+        this.K = jhmm.getK();
+        start();
+    }
+
+    /**
+     * Continues a restart of an interrupted run exactly at the iteration of
+     * its checkpoint.
+     */
+    public SingleEM(Checkpoint.Running running, int N, Read[] reads, double delta, int repeat, RunState state) {
+        this.state = state;
+        this.N = N;
+        this.K = running.getParams().getK();
+        this.Kmin = K;
+        this.L = running.getParams().getL();
+        this.n = running.getParams().getn();
+        this.delta = delta;
+        this.reads = reads;
+        this.repeat = repeat;
+        this.resume = running;
+        time(false);
+        jhmm = new JHMM(reads, N, running);
+        this.K = jhmm.getK();
+        start();
+    }
+
+    /**
+     * Finished restart of an interrupted run, nothing is computed.
+     */
+    SingleEM(OptimalResult or, double loglikelihood, int iterations, int pruned, int repeat, RunState state) {
+        this.state = state;
+        this.or = or;
+        this.N = or.getN();
+        this.K = or.getK();
+        this.Kmin = K;
+        this.L = or.getL();
+        this.n = or.getn();
+        this.loglikelihood = loglikelihood;
+        this.iterations = iterations;
+        this.pruned = pruned;
+        this.repeat = repeat;
+        state.finishRestart();
+        state.maxLLH(loglikelihood);
+        if (pruned == 0) {
+            state.getLeaderboard().finish(repeat, or.getBIC());
+        }
+    }
+
+    public SingleEM(OptimalResult or, double delta, Read[] reads, RunState state) {
+        this.state = state;
         this.N = or.getN();
         this.K = or.getK();
         this.Kmin = K;
@@ -80,33 +157,66 @@ public class SingleEM {
         this.reads = reads;
         this.repeat = -99;
         time(false);
-        jhmm = new JHMM(reads, N, L, K, n, or.getEps(), or.getRho(), or.getPi(), or.getMu(), K);
+        jhmm = new JHMM(reads, N, L, K, n, or.getEps(), or.getRho(), or.getPi(), or.getMu(), K, Random.seed(K, repeat));
         this.K = jhmm.getK();
         start();
     }
 
+    /**
+     * Writes the current parameters into the snapshot directory on the
+     * background writer.
+     */
     private void snapshot() {
-        String save = Globals.getINSTANCE().getSnapshotDir() + (Globals.getINSTANCE().isMODELSELECTION() ? "modelselection" : "training") + File.separator + "K" + K + "_R" + (repeat < 10 ? "00" : repeat < 100 ? "0" : "") + repeat + "_" + (iterations < 10 ? "000" : iterations < 100 ? "00" : iterations < 1000 ? "0" : "") + iterations;
-        OptimalResult localOr = new OptimalResult(N, K, L, n,
+        final String save = Globals.getINSTANCE().getSnapshotDir() + (Globals.getINSTANCE().isMODELSELECTION() ? "modelselection" : "training") + File.separator + "K" + K + "_R" + (repeat < 10 ? "00" : repeat < 100 ? "0" : "") + repeat + "_" + (iterations < 10 ? "000" : iterations < 100 ? "00" : iterations < 1000 ? "0" : "") + iterations;
+        final OptimalResult localOr = new OptimalResult(N, K, L, n,
+                jhmm.getRho(),
+                jhmm.getPi(),
+                jhmm.getMu(),
+                this.jhmm.getLoglikelihood(),
+                calcBIC(), Arrays.copyOf(jhmm.getEps(), jhmm.getEps().length), jhmm.getRestart(), Globals.getINSTANCE().getTAU_OMEGA(), copy(jhmm.getSnv()), Globals.getINSTANCE().getALIGNMENT_BEGIN());
+        Threading.getINSTANCE().getWriter().submit(new Runnable() {
+            @Override
+            public void run() {
+                Utils.saveOptimum(save + ".optimum", localOr);
+                Utils.saveFile(save + ".txt", new Summary().print(localOr));
+            }
+        });
+    }
+
+    /**
+     * Saves the state before the next iteration for -resume, at most every
+     * CHECKPOINT seconds.
+     */
+    private void checkpoint(double oldllh, List<Double> history) {
+        long now = System.currentTimeMillis();
+        if (!Checkpoint.isEnabled() || repeat < 0 || now - lastCheckpoint < Globals.getINSTANCE().getCHECKPOINT() * 1000L) {
+            return;
+        }
+        lastCheckpoint = now;
+        OptimalResult current = new OptimalResult(N, K, L, n,
                 jhmm.getRho(),
                 jhmm.getPi(),
                 jhmm.getMu(),
                 this.jhmm.getLoglikelihood(),
-                calcBIC(), jhmm.getEps(), jhmm.getRestart(), Globals.getINSTANCE().getTAU_OMEGA(), jhmm.getSnv(), Globals.getINSTANCE().getALIGNMENT_BEGIN());
-        Utils.saveOptimum(save + ".optimum", localOr);
-        Summary summary = new Summary();
-        Utils.saveFile(save + ".txt", summary.print(localOr));
-//        Utils.saveFile(save + ".html", summary.html(localOr));
-//        System.out.println("saved: " + (System.currentTimeMillis() - time));
+                calcBIC(), Arrays.copyOf(jhmm.getEps(), jhmm.getEps().length), jhmm.getRestart(), null, copy(jhmm.getSnv()), Globals.getINSTANCE().getALIGNMENT_BEGIN());
+        //the convergence check only looks 500 iterations back
+        List<Double> recent = new ArrayList<>(history.subList(Math.max(0, history.size() - 500), history.size()));
+        Checkpoint.saveRunning(K, repeat, current, new Checkpoint.Running(null, jhmm.getLoglikelihood(), jhmm.getSeed(), jhmm.getStep(), iterations,
+                jhmm.getMultMu(), jhmm.getMultRho(), jhmm.getBeta(), loglikelihood, oldllh, recent,
+                squarem == null ? 1 : squarem.getMaxStep(), jhmm.exportBias()));
     }
 
     private void start() {
         this.loglikelihood = Double.NEGATIVE_INFINITY;
+        if (Globals.getINSTANCE().isSQUAREM()) {
+            this.squarem = new Squarem(jhmm, delta);
+            if (resume != null) {
+                squarem.setMaxStep(resume.getMaxStep());
+            }
+        }
         this.maxBIC = calcBIC(jhmm);
 
         if (Globals.getINSTANCE().isGRADIENT()) {
-            double multMu = Globals.getINSTANCE().getMULT_MU();
-            double multRho = Globals.getINSTANCE().getMULT_RHO();
 //            int window_size = Globals.getINSTANCE().getWINDOW_END() - Globals.getINSTANCE().getWINDOW_BEGIN();
 //            Globals.getINSTANCE().setTRAIN_WINDOW_BEGIN(Globals.getINSTANCE().getWINDOW_BEGIN());
 //            Globals.getINSTANCE().setTRAIN_WINDOW_END(Globals.getINSTANCE().getWINDOW_BEGIN() + 250);
@@ -121,72 +231,109 @@ public class SingleEM {
 //            Globals.getINSTANCE().setTRAIN_WINDOW_END(Integer.MAX_VALUE);
 //            Globals.getINSTANCE().log("WINDOW FINAL: " + Globals.getINSTANCE().getWINDOW_BEGIN() + "-" + Globals.getINSTANCE().getTRAIN_WINDOW_END() + "\n");
 
-            while (Globals.getINSTANCE().getMULT_MU() > Globals.getINSTANCE().getMULT_MU_MIN() || Globals.getINSTANCE().getMULT_RHO() > Globals.getINSTANCE().getMULT_RHO_MIN()) {
-                Globals.getINSTANCE().log("MU: " + Globals.getINSTANCE().getMULT_MU() + "\tRHO: " + Globals.getINSTANCE().getMULT_RHO() + "\n");
+            //the multipliers are annealed per run, concurrent restarts start from the global values
+            while (jhmm.getMultMu() > Globals.getINSTANCE().getMULT_MU_MIN() || jhmm.getMultRho() > Globals.getINSTANCE().getMULT_RHO_MIN()) {
+                trace("MU: " + jhmm.getMultMu() + "\tRHO: " + jhmm.getMultRho() + "\n");
                 this.iterate();
-                if (Globals.getINSTANCE().getMULT_MU() > Globals.getINSTANCE().getMULT_MU_MIN()) {
-                    Globals.getINSTANCE().setMULT_MU(Globals.getINSTANCE().getMULT_MU() / 1.2);
+                if (jhmm.getMultMu() > Globals.getINSTANCE().getMULT_MU_MIN()) {
+                    jhmm.setMultMu(jhmm.getMultMu() / 1.2);
                 }
-                if (Globals.getINSTANCE().getMULT_RHO() > Globals.getINSTANCE().getMULT_RHO_MIN()) {
-                    Globals.getINSTANCE().setMULT_RHO(Globals.getINSTANCE().getMULT_RHO() / 1.2);
+                if (jhmm.getMultRho() > Globals.getINSTANCE().getMULT_RHO_MIN()) {
+                    jhmm.setMultRho(jhmm.getMultRho() / 1.2);
                 }
             }
-            Globals.getINSTANCE().setMULT_MU(Globals.getINSTANCE().getMULT_MU_MIN());
-            Globals.getINSTANCE().setMULT_RHO(Globals.getINSTANCE().getMULT_RHO_MIN());
+            jhmm.setMultMu(Globals.getINSTANCE().getMULT_MU_MIN());
+            jhmm.setMultRho(Globals.getINSTANCE().getMULT_RHO_MIN());
             this.iterate();
-            Globals.getINSTANCE().setMULT_MU(multMu);
-            Globals.getINSTANCE().setMULT_RHO(multRho);
         } else if (Globals.getINSTANCE().isANNEALING()) {
             while (jhmm.getBeta() < 1) {
                 this.iterate();
                 this.jhmm.biasMu();
                 jhmm.incBeta(1.2);
-                Globals.getINSTANCE().log("= " + jhmm.getBeta());
+                trace("= " + jhmm.getBeta());
             }
             this.iterate();
             jhmm.setBeta(1);
         } else {
             this.iterate();
         }
-        Globals.getINSTANCE().log("###c(" + jhmm.getMuChanged() + "|" + jhmm.getRhoChanged() + ")\n");
+        trace("###c(" + jhmm.getMuChanged() + "|" + jhmm.getRhoChanged() + ")\n");
+        //the model computes an E-step on construction and on every restart
+        trace("E-steps: " + (jhmm.getRestart() + 1) + "\n");
+        if (squarem != null) {
+            trace(squarem.summary());
+        }
 
-        StatusUpdate.getINSTANCE().incPercentage();
+        state.finishRestart();
 
-        Globals.getINSTANCE().maxMAX_LLH(loglikelihood);
+        //the last iteration maximized after its E-step, the reported likelihood has to belong to the returned parameters
+        if (pruned == 0 && !state.isCancelled()) {
+            this.loglikelihood = jhmm.evaluate();
+        }
+        state.maxLLH(loglikelihood);
         this.calcBic();
+        if (pruned == 0) {
+            state.getLeaderboard().finish(repeat, or.getBIC());
+        }
+        if (!state.isCancelled()) {
+            Checkpoint.saveRestart(K, repeat, this);
+        }
 
         if (Globals.getINSTANCE().isDEBUG()) {
-            Globals.getINSTANCE().log("####");
-            Globals.getINSTANCE().log("\n");
+            trace("####");
+            trace("\n");
         }
         if (Globals.getINSTANCE().isSNAPSHOTS()) {
             this.snapshot();
         }
+        //the result is kept in or, release the model with its expected-count storages
+        this.jhmm = null;
+        this.squarem = null;
+        this.reads = null;
     }
 
     private void iterate() {
         iterations = 0;
-        double oldllh;
+        double oldllh = Double.NEGATIVE_INFINITY;
+        double olderllh;
         List<Double> history = new LinkedList<>();
+        if (resume != null) {
+            //continues the annealing stage at the iteration of the checkpoint
+            iterations = resume.getIterations();
+            oldllh = resume.getOldllh();
+            loglikelihood = resume.getLoglikelihood();
+            history.addAll(resume.getHistory());
+            resume = null;
+        }
         if (Globals.getINSTANCE().isDEBUG()) {
             Utils.appendFile(Globals.getINSTANCE().getSAVEPATH() + "support/log/" + "LOG-" + K + "-" + repeat + ".txt", "" + jhmm.getLoglikelihood());
         }
         do {
-            Globals.getINSTANCE().minMIN_BIC(maxBIC);
+            this.checkpoint(oldllh, history);
+            if (state.isCancelled()) {
+                trace("cancelled;\t");
+                break;
+            }
+            state.minBIC(maxBIC);
             iterations++;
             history.add(loglikelihood);
+            olderllh = oldllh;
             oldllh = loglikelihood;
             loglikelihood = jhmm.getLoglikelihood();
-            if (Globals.getINSTANCE().isSTOP_QUICK() && Math.abs((oldllh - loglikelihood) / loglikelihood) < 1e-2 && loglikelihood != Globals.getINSTANCE().getMAX_LLH()
-                    && ((loglikelihood - Globals.getINSTANCE().getMAX_LLH()) / loglikelihood) > 0.1) {
+            if (Globals.getINSTANCE().isRACE() && repeat >= 0 && this.isHopeless(olderllh, oldllh)) {
+                trace("pruned at iteration " + iterations + ";\t");
+                break;
+            }
+            if (Globals.getINSTANCE().isSTOP_QUICK() && Math.abs((oldllh - loglikelihood) / loglikelihood) < 1e-2 && loglikelihood != state.getMaxLLH()
+                    && ((loglikelihood - state.getMaxLLH()) / loglikelihood) > 0.1) {
                 if (Globals.getINSTANCE().isDEBUG()) {
                     System.out.println("too small");
                 }
                 break;
             }
-            if (iterations > 500) {
-                if (history.get(iterations - 500) - loglikelihood > -1) {
-                    Globals.getINSTANCE().log("break 500;\t");
+            if (history.size() > 500) {
+                if (history.get(history.size() - 500) - loglikelihood > -1) {
+                    trace("break 500;\t");
                     break;
                 }
             }
@@ -194,19 +341,23 @@ public class SingleEM {
             Globals.getINSTANCE().setCURRENT_DELTA_LLH((oldllh - loglikelihood) / loglikelihood);
             if (Globals.getINSTANCE().isDEBUG()) {
                 if (loglikelihood < 0 && oldllh < 0) {
-                    Globals.getINSTANCE().log((oldllh - loglikelihood) / loglikelihood + "\tm(" + jhmm.getMuFlats() + "|" + jhmm.getNjkvFlats() + ")\tr(" + jhmm.getRhoFlats() + "|" + jhmm.getNjklFlats() + ")\tc(" + jhmm.getMuChanged() + "|" + jhmm.getRhoChanged() + ")\t" + ((loglikelihood - Globals.getINSTANCE().getMAX_LLH()) / loglikelihood) + "\t");
+                    trace((oldllh - loglikelihood) / loglikelihood + "\tm(" + jhmm.getMuFlats() + "|" + jhmm.getNjkvFlats() + ")\tr(" + jhmm.getRhoFlats() + "|" + jhmm.getNjklFlats() + ")\tc(" + jhmm.getMuChanged() + "|" + jhmm.getRhoChanged() + ")\t" + ((loglikelihood - state.getMaxLLH()) / loglikelihood) + "\t");
                 } else if (loglikelihood > 0 && oldllh > 0) {
-                    Globals.getINSTANCE().log((loglikelihood - oldllh) / loglikelihood + "\tm(" + jhmm.getMuFlats() + "|" + jhmm.getNjkvFlats() + ")\tr(" + jhmm.getRhoFlats() + "|" + jhmm.getNjklFlats() + ")\tc(" + jhmm.getMuChanged() + "|" + jhmm.getRhoChanged() + ")\t" + ((loglikelihood - Globals.getINSTANCE().getMAX_LLH()) / loglikelihood) + "\t");
+                    trace((loglikelihood - oldllh) / loglikelihood + "\tm(" + jhmm.getMuFlats() + "|" + jhmm.getNjkvFlats() + ")\tr(" + jhmm.getRhoFlats() + "|" + jhmm.getNjklFlats() + ")\tc(" + jhmm.getMuChanged() + "|" + jhmm.getRhoChanged() + ")\t" + ((loglikelihood - state.getMaxLLH()) / loglikelihood) + "\t");
                 } else if (loglikelihood > 0 && oldllh < 0) {
-                    Globals.getINSTANCE().log((loglikelihood + oldllh) / loglikelihood + "\tm(" + jhmm.getMuFlats() + "|" + jhmm.getNjkvFlats() + ")\tr(" + jhmm.getRhoFlats() + "|" + jhmm.getNjklFlats() + ")\tc(" + jhmm.getMuChanged() + "|" + jhmm.getRhoChanged() + ")\t" + ((loglikelihood - Globals.getINSTANCE().getMAX_LLH()) / loglikelihood) + "\t");
+                    trace((loglikelihood + oldllh) / loglikelihood + "\tm(" + jhmm.getMuFlats() + "|" + jhmm.getNjkvFlats() + ")\tr(" + jhmm.getRhoFlats() + "|" + jhmm.getNjklFlats() + ")\tc(" + jhmm.getMuChanged() + "|" + jhmm.getRhoChanged() + ")\t" + ((loglikelihood - state.getMaxLLH()) / loglikelihood) + "\t");
                 }
-                Globals.getINSTANCE().log(loglikelihood + "\n");
+                trace(loglikelihood + "\n");
             }
 
 //            if (Globals.getINSTANCE().isPRUNE() && K > Kmin) {
 //                this.jhmm = prune();
 //            } else {
-            jhmm.restart();
+            if (squarem != null) {
+                squarem.step();
+            } else {
+                jhmm.restart();
+            }
 //            }
             if (Globals.getINSTANCE().isDEBUG()) {
                 Utils.appendFile(Globals.getINSTANCE().getSAVEPATH() + "support/log/" + "LOG-" + K + "-" + repeat + ".txt", " " + jhmm.getLoglikelihood());
@@ -394,52 +545,67 @@ public class SingleEM {
 //        this.K = argMax.getK();
 //        return argMax;
 //    }
+    /**
+     * Publishes the trajectory to the leaderboard and checks whether this
+     * restart can still beat the best finished restart.
+     */
+    private boolean isHopeless(double olderllh, double oldllh) {
+        RestartLeaderboard leaderboard = state.getLeaderboard();
+        double projected = RestartLeaderboard.project(olderllh, oldllh, loglikelihood);
+        leaderboard.publish(repeat, iterations, loglikelihood, projected);
+        if (iterations < RestartLeaderboard.MIN_ITERATIONS || Double.isInfinite(projected)
+                || leaderboard.getBestBIC() == Double.NEGATIVE_INFINITY) {
+            return false;
+        }
+        double projectedBIC = projected - (freeParameters(jhmm.getParams()) / 2d) * Math.log(N);
+        if (leaderboard.isHopeless(projectedBIC, Globals.getINSTANCE().getRACE_MARGIN())) {
+            leaderboard.prune(repeat, iterations, projectedBIC);
+            this.pruned = iterations;
+            return true;
+        }
+        return false;
+    }
+
     private double calcBIC(JHMM jhmm) {
         // count free parameters
         double BIC_current = jhmm.getLoglikelihood();
-        BIC_current -= (freeParameters(jhmm) / 2d) * Math.log(N);
+        BIC_current -= (freeParameters(jhmm.getParams()) / 2d) * Math.log(N);
         return BIC_current;
     }
 
-    private int freeParameters(JHMM jhmm) {
+    int freeParameters(JHMMParams params) {
         int freeParameters = 0;
         double ERROR = 1e-15;
 
-        double[][][] rho = jhmm.getRho();
-        double[][][] mu = jhmm.getMu();
-        double[][] pi = jhmm.getPi();
-        double[] eps = jhmm.getEps();
-
-        for (int j = 0; j < mu.length; j++) {
-            for (int k = 0; k < mu[j].length; k++) {
-
-                //mu
-                for (int v = 0; v < mu[j][k].length; v++) {
-                    if (mu[j][k][v] > ERROR) {
-                        freeParameters++;
-                    }
-                }
+        //mu
+        for (double mu : params.getMu()) {
+            if (mu > ERROR) {
+                freeParameters++;
+            }
+        }
 
-                //rho
-                if (j < L - 1) {
-                    if (!Globals.getINSTANCE().isNO_RECOMB()) {
-                        for (int l = 0; l < rho[j][k].length; l++) {
-                            if (rho[j][k][l] > ERROR) {
-                                freeParameters++;
-                            }
-                        }
-                    }
-                }
-                if (eps[j] > ERROR) {
+        //rho
+        if (!Globals.getINSTANCE().isNO_RECOMB()) {
+            double[] rho = params.getRho();
+            int end = Math.min(params.getRhoRows(), L - 1) * params.getK() * params.getK();
+            for (int i = 0; i < end; i++) {
+                if (rho[i] > ERROR) {
                     freeParameters++;
                 }
             }
         }
-        for (int j = 0; j < pi.length; j++) {
-            for (int k = 0; k < pi[j].length; k++) {
-                if (pi[j][k] > ERROR) {
-                    freeParameters++;
-                }
+
+        //eps, once per generator
+        for (double eps : params.getEps()) {
+            if (eps > ERROR) {
+                freeParameters += params.getK();
+            }
+        }
+
+        //pi
+        for (double pi : params.getPi()) {
+            if (pi > ERROR) {
+                freeParameters++;
             }
         }
         return freeParameters;
@@ -447,7 +613,7 @@ public class SingleEM {
 
     private double calcBIC() {
         double BIC_current = this.jhmm.getLoglikelihood();
-        BIC_current -= (freeParameters(this.jhmm) / 2d) * Math.log(N);
+        BIC_current -= (freeParameters(this.jhmm.getParams()) / 2d) * Math.log(N);
         return BIC_current;
     }
 
@@ -461,7 +627,7 @@ public class SingleEM {
             if (show) {
                 sb.append(t).append("\t\t");
                 if (Globals.getINSTANCE().isDEBUG()) {
-                    Globals.getINSTANCE().log(iterations + "\t" + t + "\t\t");
+                    trace(iterations + "\t" + t + "\t\t");
                 }
             }
             time = System.currentTimeMillis();
@@ -474,47 +640,65 @@ public class SingleEM {
         sb.append(llh).append("\t\t").append("\n");
     }
 
-    public String getOptimumPath() {
-        if (!Globals.getINSTANCE().isSNAPSHOTS()) {
-            this.snapshot();
+    /**
+     * Messages of this run are printed immediately if requested, otherwise
+     * kept in the run log, such that concurrent restarts do not interleave.
+     */
+    private void trace(Object o) {
+        if (Globals.getINSTANCE().isPRINT()) {
+            Globals.getINSTANCE().log(o);
+        } else if (Globals.getINSTANCE().isLOGGING()) {
+            runLog.append(o);
         }
+    }
 
-        String save = Globals.getINSTANCE().getSnapshotDir() + (Globals.getINSTANCE().isMODELSELECTION() ? "modelselection" : "training") + File.separator + "R" + (repeat < 10 ? "00" : repeat < 100 ? "0" : "") + repeat + "_K" + K + "_" + (iterations < 10 ? "000" : iterations < 100 ? "00" : iterations < 1000 ? "0" : "") + iterations;
-        OptimalResult localOr = new OptimalResult(N, K, L, n,
-                jhmm.getRho(),
-                jhmm.getPi(),
-                jhmm.getMu(),
-                this.jhmm.getLoglikelihood(),
-                calcBIC(), jhmm.getEps(), jhmm.getRestart(), Globals.getINSTANCE().getTAU_OMEGA(), jhmm.getSnv(), Globals.getINSTANCE().getALIGNMENT_BEGIN());
-        Utils.saveOptimum(save + ".optimum", localOr);
-
-        return Globals.getINSTANCE().getSnapshotDir() + (Globals.getINSTANCE().isMODELSELECTION() ? "modelselection" : "training") + File.separator + "R" + (repeat < 10 ? "00" : repeat < 100 ? "0" : "") + repeat + "_K" + K + "_" + (iterations < 10 ? "000" : iterations < 100 ? "00" : iterations < 1000 ? "0" : "") + iterations + ".optimum";
+    /**
+     * Writes the result of this run into the snapshot directory on the
+     * background writer.
+     *
+     * @return path of the file
+     */
+    public String persist() {
+        final String save = Globals.getINSTANCE().getSnapshotDir() + (Globals.getINSTANCE().isMODELSELECTION() ? "modelselection" : "training") + File.separator + "R" + (repeat < 10 ? "00" : repeat < 100 ? "0" : "") + repeat + "_K" + K + "_" + (iterations < 10 ? "000" : iterations < 100 ? "00" : iterations < 1000 ? "0" : "") + iterations + ".optimum";
+        final OptimalResult result = this.or;
+        Threading.getINSTANCE().getWriter().submit(new Runnable() {
+            @Override
+            public void run() {
+                Utils.saveOptimum(save, result);
+            }
+        });
+        return save;
     }
 
     public void calcBic() {
         //overview
         double BIC_current = this.jhmm.getLoglikelihood();
 
-        BIC_current -= (freeParameters(this.jhmm) / 2d) * Math.log(N);
+        BIC_current -= (freeParameters(this.jhmm.getParams()) / 2d) * Math.log(N);
         if (Globals.getINSTANCE().isLOG_BIC()) {
-            Utils.appendFile(Globals.getINSTANCE().getSAVEPATH() + "BIC-" + K + ".txt", BIC_current + "\t" + freeParameters(this.jhmm) + "\n");
-        }
-        double[][][] muCopy = new double[L][K][n];
-        for (int j = 0; j < L; j++) {
-            for (int k = 0; k < K; k++) {
-                System.arraycopy(jhmm.getMu()[j][k], 0, muCopy[j][k], 0, n);
-            }
-        }
-        double[][] snvCopy = new double[jhmm.getSnv().length][jhmm.getSnv()[0].length];
-        for (int j = 0; j < jhmm.getSnv().length; j++) {
-            System.arraycopy(jhmm.getSnv()[j], 0, snvCopy[j], 0, jhmm.getSnv()[0].length);
+            Utils.appendFile(Globals.getINSTANCE().getSAVEPATH() + "BIC-" + K + ".txt", BIC_current + "\t" + freeParameters(this.jhmm.getParams()) + "\n");
         }
         this.or = new OptimalResult(N, K, L, n,
-                Arrays.copyOf(jhmm.getRho(), jhmm.getRho().length),
-                Arrays.copyOf(jhmm.getPi(), jhmm.getPi().length),
-                muCopy,
+                jhmm.getRho(),
+                jhmm.getPi(),
+                jhmm.getMu(),
                 this.jhmm.getLoglikelihood(),
-                BIC_current, Arrays.copyOf(jhmm.getEps(), jhmm.getEps().length), jhmm.getRestart(), Globals.getINSTANCE().getTAU_OMEGA(), snvCopy, Globals.getINSTANCE().getALIGNMENT_BEGIN());
+                BIC_current, Arrays.copyOf(jhmm.getEps(), jhmm.getEps().length), jhmm.getRestart(), Globals.getINSTANCE().getTAU_OMEGA(), copy(jhmm.getSnv()), Globals.getINSTANCE().getALIGNMENT_BEGIN());
+    }
+
+    private static double[][] copy(double[][] a) {
+        double[][] copy = new double[a.length][];
+        for (int j = 0; j < a.length; j++) {
+            copy[j] = Arrays.copyOf(a[j], a[j].length);
+        }
+        return copy;
+    }
+
+    /**
+     * @return messages of this run that have not been printed
+     */
+    public String getLog() {
+        return runLog.toString();
     }
 
     public void printMeanTime() {
@@ -525,10 +709,21 @@ public class SingleEM {
         System.out.println("Mean:" + ((double) sum) / times.size());
     }
 
+    /**
+     * @return the iteration at which this restart was pruned or 0
+     */
+    public int getPruned() {
+        return pruned;
+    }
+
     public OptimalResult getOptimalResult() {
         return or;
     }
 
+    public int getIterations() {
+        return iterations;
+    }
+
     public double getLoglikelihood() {
         return loglikelihood;
     }
@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import java.util.Arrays;
+
+/**
+ * Forward-backward pass of the recombination model, arranged for the JIT
+ * auto-vectorizer. Innermost loops run over contiguous generator or base
+ * indices, per-position emission factors are computed once outside of them
+ * and expected counts are written directly into the flat storage arrays. The
+ * no-recombination model is delegated to {@link ReadHMMStatic_NR}.
+ *
+ * Results agree with {@link ReferenceEngine} up to floating point
+ * reassociation.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class VectorizedEngine implements ForwardBackwardEngine {
+
+    @Override
+    public double computeFB(JHMM jhmm, Read read, ParallelJHMMStorage storage, ForwardBackwardWorkspace ws) {
+        if (Globals.getINSTANCE().isNO_RECOMB()) {
+            return ReadHMMStatic_NR.computeFB(jhmm, read, storage, ws);
+        }
+        try {
+            final int begin = read.getBegin();
+            final int length = read.getLength();
+            storage.markSpan(begin, begin + length);
+            final int K = jhmm.getK();
+            final int n = jhmm.getn();
+            final int KK = K * K;
+            final double count = read.getCount();
+            final JHMMParams params = jhmm.getParams();
+            final double[] rho = params.getRho();
+            final double[] mu = params.getMu();
+            final double[] pi = params.getPi();
+            final double[] eps = params.getEps();
+            final double[] antieps = params.getAntieps();
+            final EmissionTable emissions = jhmm.getEmissions();
+            final double[] marginal = emissions.getMarginal();
+            final double[] mismatch = emissions.getMismatch();
+            final double[] nJKL = storage.getnJKL();
+            final double[] nJKV = storage.getnJKV();
+            final double[] fJKV = ws.fJKV;
+            final double[] fJK = ws.fJK;
+            final double[] bJK = ws.bJK;
+            final double[] c = ws.c;
+            final double[] prior = ws.prior;
+            final double[] weight = ws.weight;
+            final double[] emission = ws.emission;
+            double likelihood = 0;
+
+            /*Forward*/
+            for (int j = 0; j < length; j++) {
+                final int jGlobal = j + begin;
+                final int jK = j * K;
+                if (j == 0) {
+                    System.arraycopy(pi, jGlobal * K, prior, 0, K);
+                } else {
+                    Arrays.fill(prior, 0, K, 0d);
+                    final int rhoRow = (jGlobal - 1) * KK;
+                    for (int l = 0; l < K; l++) {
+                        final double f = fJK[jK - K + l];
+                        final int rl = rhoRow + l * K;
+                        for (int k = 0; k < K; k++) {
+                            prior[k] += f * rho[rl + k];
+                        }
+                    }
+                }
+                double sum = 0d;
+                if (read.isHit(j)) {
+                    final byte b = read.getBase(j);
+                    final double q = read.getQuality(j);
+                    if (q < 1) {
+                        Arrays.fill(emission, 0, n, eps[jGlobal] * (1 - q) / (double) n);
+                        if (b < n) {
+                            emission[b] = antieps[jGlobal] * q;
+                        }
+                    } else {
+                        Arrays.fill(emission, 0, n, eps[jGlobal]);
+                        if (b < n) {
+                            emission[b] = antieps[jGlobal];
+                        }
+                    }
+                    final int muRow = jGlobal * K * n;
+                    for (int k = 0; k < K; k++) {
+                        final int jkn = (jK + k) * n;
+                        final int mk = muRow + k * n;
+                        final double p = prior[k];
+                        for (int v = 0; v < n; v++) {
+                            fJKV[jkn + v] = p * emission[v] * mu[mk + v];
+                            sum += fJKV[jkn + v];
+                        }
+                    }
+                } else {
+                    for (int k = 0; k < K; k++) {
+                        final int jkn = (jK + k) * n;
+                        final double p = prior[k];
+                        for (int v = 0; v < n; v++) {
+                            fJKV[jkn + v] = p;
+                            sum += p;
+                        }
+                    }
+                }
+                final double cj = 1d / sum;
+                c[j] = cj;
+                for (int k = 0; k < K; k++) {
+                    final int jkn = (jK + k) * n;
+                    double f = 0d;
+                    for (int v = 0; v < n; v++) {
+                        fJKV[jkn + v] *= cj;
+                        f += fJKV[jkn + v];
+                    }
+                    fJK[jK + k] = f;
+                }
+            }
+            /*Backward*/
+            for (int j = length - 1; j >= 0; j--) {
+                final boolean hit = read.isHit(j);
+                if (hit) {
+                    likelihood += Math.log(1d / c[j]);
+                }
+                final int jGlobal = j + begin;
+                final int jK = j * K;
+                if (j == length - 1) {
+                    Arrays.fill(bJK, jK, jK + K, c[j]);
+                } else {
+                    //weight[l] := emission of the next observation by l times its backward probability
+                    final int next = jK + K;
+                    if (read.isHit(j + 1)) {
+                        final byte b = read.getBase(j + 1);
+                        final double q = read.getQuality(j + 1);
+                        if (q < 1) {
+                            final double match = antieps[jGlobal + 1] * q;
+                            final double miss = eps[jGlobal + 1] * (1 - q) / (double) n;
+                            for (int l = 0; l < K; l++) {
+                                final double muB = b < n ? mu[((jGlobal + 1) * K + l) * n + b] : 0d;
+                                weight[l] = (match * muB + miss * mismatch[emissions.index(jGlobal + 1, l, b)]) * bJK[next + l];
+                            }
+                        } else {
+                            for (int l = 0; l < K; l++) {
+                                weight[l] = marginal[emissions.index(jGlobal + 1, l, b)] * bJK[next + l];
+                            }
+                        }
+                    } else {
+                        System.arraycopy(bJK, next, weight, 0, K);
+                    }
+                    final int rhoRow = jGlobal * KK;
+                    final double cj = c[j];
+                    for (int k = 0; k < K; k++) {
+                        final int rk = rhoRow + k * K;
+                        double s = 0d;
+                        for (int l = 0; l < K; l++) {
+                            s += rho[rk + l] * weight[l];
+                        }
+                        bJK[jK + k] = s * cj;
+                    }
+                }
+                double gammaSum = 0d;
+                for (int k = 0; k < K; k++) {
+                    if (Double.isInfinite(bJK[jK + k])) {
+                        //see ReadHMMStatic, the char has not been observed and cannot be emitted
+                        bJK[jK + k] = 0d;
+                    }
+                    gammaSum += fJK[jK + k] * bJK[jK + k];
+                }
+                if (hit) {
+                    final byte b = read.getBase(j);
+                    if (gammaSum == 0) {
+                        final double uniform = count / n;
+                        for (int k = 0; k < K; k++) {
+                            final int out = (jGlobal * K + k) * n;
+                            for (int v = 0; v < n; v++) {
+                                nJKV[out + v] += uniform;
+                            }
+                        }
+                    } else {
+                        double neq = 0d;
+                        for (int k = 0; k < K; k++) {
+                            final int jkn = (jK + k) * n;
+                            final int out = (jGlobal * K + k) * n;
+                            final double factor = count * bJK[jK + k] / gammaSum;
+                            for (int v = 0; v < n; v++) {
+                                final double gamma = fJKV[jkn + v] * factor;
+                                nJKV[out + v] += gamma;
+                                neq += v == b ? 0d : gamma;
+                            }
+                        }
+                        storage.addnneqPos(j, neq);
+                    }
+                    if (j > 0) {
+                        for (int l = 0; l < K; l++) {
+                            weight[l] = marginal[emissions.index(jGlobal, l, b)] * bJK[jK + l];
+                        }
+                        final int rhoRow = (jGlobal - 1) * KK;
+                        double xiSum = 0d;
+                        for (int k = 0; k < K; k++) {
+                            final double f = fJK[jK - K + k];
+                            final int rk = rhoRow + k * K;
+                            for (int l = 0; l < K; l++) {
+                                xiSum += f * rho[rk + l] * weight[l];
+                            }
+                        }
+                        if (xiSum != 0) {
+                            final double scale = count / xiSum;
+                            for (int k = 0; k < K; k++) {
+                                final double f = scale * fJK[jK - K + k];
+                                final int rk = rhoRow + k * K;
+                                final int out = (jGlobal * K + k) * K;
+                                for (int l = 0; l < K; l++) {
+                                    nJKL[out + l] += f * rho[rk + l] * weight[l];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            likelihood *= count;
+
+            return likelihood;
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+        return 0;
+    }
+}
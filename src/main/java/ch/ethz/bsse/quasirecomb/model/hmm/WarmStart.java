@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.distance.KullbackLeibler;
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
+import java.util.Random;
+
+/**
+ * Initialization of a model with K + 1 generators from the optimum with K
+ * generators. The generator with the highest entropy is split into two twins,
+ * which share its emissions, start and transition probabilities, and are
+ * perturbed independently. All other generators are kept.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class WarmStart {
+
+    /**
+     * Maximal relative change of every emission probability of the twins
+     * before renormalization. The noise is multiplicative, thus the twins
+     * keep the likelihood of the split generator and only break the symmetry.
+     */
+    public static final double PERTURBATION = 0.5;
+    /**
+     * Fraction of the staying probability of a twin that is moved to the
+     * other twin, unless recombination is disabled.
+     */
+    public static final double TWIN_JUMP = 0.01;
+
+    /**
+     * @param restart index of the restart
+     * @param repeats number of restarts
+     * @return whether the restart starts from random parameters, which are the
+     * first WARM_RANDOM fraction of restarts
+     */
+    public static boolean isRandom(int restart, int repeats) {
+        return restart < Math.ceil(Globals.getINSTANCE().getWARM_RANDOM() * repeats);
+    }
+
+    /**
+     * @return the generator with the highest entropy
+     */
+    public static int splitGenerator(OptimalResult or) {
+        int split = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < or.getK(); k++) {
+            double e = KullbackLeibler.shannonEntropy(or.getMu(), k);
+            if (e > max) {
+                max = e;
+                split = k;
+            }
+        }
+        return split;
+    }
+
+    /**
+     * @param or optimum with K generators
+     * @param seed seed of the perturbation
+     * @return perturbed parameters with K + 1 generators
+     */
+    public static JHMMParams split(OptimalResult or, long seed) {
+        Random rnd = new Random(seed);
+        int K = or.getK();
+        int L = or.getL();
+        int n = or.getn();
+        int s = splitGenerator(or);
+        double[][][] muOld = or.getMu();
+        double[][] piOld = or.getPi();
+        double[][][] rhoOld = or.getRho();
+
+        double[][][] mu = new double[L][K + 1][];
+        double[][] pi = new double[L][K + 1];
+        for (int j = 0; j < L; j++) {
+            for (int k = 0; k < K; k++) {
+                mu[j][k] = k == s ? perturb(muOld[j][k], rnd) : muOld[j][k].clone();
+                pi[j][k] = piOld[j][k];
+            }
+            mu[j][K] = perturb(muOld[j][s], rnd);
+            pi[j][s] = piOld[j][s] / 2;
+            pi[j][K] = piOld[j][s] / 2;
+        }
+
+        double jump = Globals.getINSTANCE().isNO_RECOMB() ? 0d : TWIN_JUMP;
+        double[][][] rho = new double[rhoOld.length][K + 1][K + 1];
+        for (int j = 0; j < rhoOld.length; j++) {
+            for (int k = 0; k < K; k++) {
+                if (k == s) {
+                    continue;
+                }
+                for (int l = 0; l < K; l++) {
+                    rho[j][k][l] = rhoOld[j][k][l];
+                }
+                rho[j][k][s] = rhoOld[j][k][s] / 2;
+                rho[j][k][K] = rhoOld[j][k][s] / 2;
+            }
+            int[] twins = {s, K};
+            for (int t = 0; t < 2; t++) {
+                int twin = twins[t];
+                int other = twins[1 - t];
+                for (int l = 0; l < K; l++) {
+                    rho[j][twin][l] = rhoOld[j][s][l];
+                }
+                rho[j][twin][twin] = rhoOld[j][s][s] * (1 - jump);
+                rho[j][twin][other] = rhoOld[j][s][s] * jump;
+            }
+        }
+        return new JHMMParams(L, K + 1, n, rho, pi, mu, or.getEps());
+    }
+
+    private static double[] perturb(double[] p, Random rnd) {
+        double[] q = new double[p.length];
+        double sum = 0d;
+        for (int v = 0; v < p.length; v++) {
+            q[v] = p[v] * (1 + (2 * rnd.nextDouble() - 1) * PERTURBATION);
+            sum += q[v];
+        }
+        for (int v = 0; v < p.length; v++) {
+            q[v] /= sum;
+        }
+        return q;
+    }
+}
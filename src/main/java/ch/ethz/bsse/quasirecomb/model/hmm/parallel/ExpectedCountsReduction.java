@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm.parallel;
+
+import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sums the expected counts of all worker storages into the global count
+ * arrays. The position range is split recursively, thus every fork/join
+ * worker reduces a disjoint block of positions over all storages. The
+ * storages are always summed in the order of their stripes. Blocks that are
+ * not covered by any read are skipped.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class ExpectedCountsReduction extends RecursiveAction {
+
+    private static final int THRESHOLD = 4 * ParallelJHMMStorage.BLOCK;
+    private final ParallelJHMMStorage[] stores;
+    private final double[][][] nJKL;
+    private final double[][][] nJKV;
+    private final double[] nneqPos;
+    private final int from;
+    private final int to;
+
+    public ExpectedCountsReduction(ParallelJHMMStorage[] stores, double[][][] nJKL, double[][][] nJKV, double[] nneqPos, int from, int to) {
+        this.stores = stores;
+        this.nJKL = nJKL;
+        this.nJKV = nJKV;
+        this.nneqPos = nneqPos;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            Arrays.fill(nneqPos, from, to, 0d);
+            for (int j = from; j < to; j++) {
+                if (!isCovered(j / ParallelJHMMStorage.BLOCK)) {
+                    //blocks without reads have never been written and are still zero
+                    continue;
+                }
+                for (int k = 0; k < nJKL[j].length; k++) {
+                    Arrays.fill(nJKL[j][k], 0d);
+                    Arrays.fill(nJKV[j][k], 0d);
+                }
+            }
+            for (ParallelJHMMStorage store : stores) {
+                store.addTo(from, to, nJKL, nJKV, nneqPos);
+            }
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ExpectedCountsReduction(stores, nJKL, nJKV, nneqPos, from, middle),
+                    new ExpectedCountsReduction(stores, nJKL, nJKV, nneqPos, middle, to));
+        }
+    }
+
+    private boolean isCovered(int block) {
+        for (ParallelJHMMStorage store : stores) {
+            if (store.isTouched(block)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm.parallel;
+
+import ch.ethz.bsse.quasirecomb.informationholder.ParallelJHMMStorage;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.model.hmm.ForwardBackwardEngine;
+import ch.ethz.bsse.quasirecomb.model.hmm.ForwardBackwardWorkspace;
+import ch.ethz.bsse.quasirecomb.model.hmm.JHMM;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs the forward-backward algorithm on the stripes [from, to) of a partition
+ * plan and returns the summed log-likelihood. The stripe range is split in
+ * halves, thus idle fork/join workers steal the pending halves of busy ones.
+ * A stripe adds its expected counts to the storage of the same index.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class ForwardBackwardTask extends RecursiveTask<Double> {
+
+    private final JHMM jhmm;
+    private final PartitionPlan plan;
+    private final int from;
+    private final int to;
+
+    public ForwardBackwardTask(JHMM jhmm, PartitionPlan plan, int from, int to) {
+        this.jhmm = jhmm;
+        this.plan = plan;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Double compute() {
+        if (to - from <= 1) {
+            return from < to ? computeStripe(from) : 0d;
+        }
+        int middle = (from + to) >>> 1;
+        ForwardBackwardTask right = new ForwardBackwardTask(jhmm, plan, middle, to);
+        right.fork();
+        double left = new ForwardBackwardTask(jhmm, plan, from, middle).compute();
+        return left + right.join();
+    }
+
+    private double computeStripe(int s) {
+        double d = 0;
+        ParallelJHMMStorage p = jhmm.getStorage(s);
+        ForwardBackwardWorkspace ws = ForwardBackwardWorkspace.getLocal();
+        ws.ensureCapacity(jhmm.getMaxReadLength(), jhmm.getK(), jhmm.getn());
+        ForwardBackwardEngine engine = jhmm.getEngine();
+        for (int c : plan.getStripe(s)) {
+            for (Read read : plan.getChunk(c)) {
+                d += engine.computeFB(jhmm, read, p, ws);
+            }
+        }
+        return d;
+    }
+}
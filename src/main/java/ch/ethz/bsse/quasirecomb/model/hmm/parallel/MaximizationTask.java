@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm.parallel;
+
+import ch.ethz.bsse.quasirecomb.model.hmm.JHMM;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs the M-step on the position blocks [from, to). Every position is
+ * maximized independently, thus blocks are processed by different fork/join
+ * workers. The partial results are combined in block order, which makes the
+ * outcome independent of the number of threads.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class MaximizationTask extends RecursiveTask<MaximizationTask.Result> {
+
+    /**
+     * Number of positions maximized by a single task.
+     */
+    public static final int BLOCK = 64;
+    private final JHMM jhmm;
+    private final int from;
+    private final int to;
+
+    public MaximizationTask(JHMM jhmm, int from, int to) {
+        this.jhmm = jhmm;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param L number of positions
+     * @return number of blocks covering L positions
+     */
+    public static int blocks(int L) {
+        return (L + BLOCK - 1) / BLOCK;
+    }
+
+    @Override
+    protected Result compute() {
+        if (to - from <= 1) {
+            Result result = new Result();
+            if (from < to) {
+                jhmm.maximize(from * BLOCK, Math.min(jhmm.getL(), (from + 1) * BLOCK), result);
+            }
+            return result;
+        }
+        int middle = (from + to) >>> 1;
+        MaximizationTask right = new MaximizationTask(jhmm, middle, to);
+        right.fork();
+        Result left = new MaximizationTask(jhmm, from, middle).compute();
+        return left.add(right.join());
+    }
+
+    /**
+     * Counters and flags of the M-step on a range of positions.
+     */
+    public static class Result {
+
+        private int muChanged;
+        private int rhoChanged;
+        private boolean forceRho;
+        private final StringBuilder piDist = new StringBuilder();
+
+        /**
+         * Appends the result of the directly following range.
+         *
+         * @return this
+         */
+        Result add(Result next) {
+            this.muChanged += next.muChanged;
+            this.rhoChanged += next.rhoChanged;
+            this.forceRho |= next.forceRho;
+            this.piDist.append(next.piDist);
+            return this;
+        }
+
+        public void incMuChanged() {
+            this.muChanged++;
+        }
+
+        public void incRhoChanged() {
+            this.rhoChanged++;
+        }
+
+        public void forceRho() {
+            this.forceRho = true;
+        }
+
+        public int getMuChanged() {
+            return muChanged;
+        }
+
+        public int getRhoChanged() {
+            return rhoChanged;
+        }
+
+        public boolean isForceRho() {
+            return forceRho;
+        }
+
+        public StringBuilder getPiDist() {
+            return piDist;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm.parallel;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Splits the reads into contiguous chunks of roughly equal forward-backward
+ * cost. The cost of a read is estimated as length * K^2, weighted slightly by
+ * the logarithm of its count. There are more chunks than workers.
+ *
+ * The chunks are dealt to at most one stripe per worker, the most expensive
+ * chunk first to the cheapest stripe. Every stripe is processed by a single
+ * task and adds its expected counts to its own storage. Hence, which reads end
+ * up in which storage and the order of the summation do not depend on the
+ * scheduling of the fork/join pool and the E-step is reproducible.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class PartitionPlan {
+
+    /**
+     * Chunks per worker of the fork/join pool.
+     */
+    private static final int OVERSPLIT = 4;
+    /**
+     * Minimal estimated cost of a chunk, such that small data sets are not
+     * fragmented beyond the task overhead.
+     */
+    private static final double MIN_CHUNK_COST = 1 << 18;
+    private static final double COUNT_WEIGHT = 0.1;
+    private final int K;
+    private final Read[][] chunks;
+    private final double[] costs;
+    private final int[][] stripes;
+
+    public PartitionPlan(Read[] reads, int K) {
+        this.K = K;
+        double[] readCosts = new double[reads.length];
+        double total = 0d;
+        for (int i = 0; i < reads.length; i++) {
+            readCosts[i] = cost(reads[i], K);
+            total += readCosts[i];
+        }
+        int chunkCount;
+        if (Globals.getINSTANCE().getSTEPS() == 2) {
+            chunkCount = Globals.getINSTANCE().getFjPool().getParallelism() * OVERSPLIT;
+            chunkCount = (int) Math.min(chunkCount, Math.ceil(total / MIN_CHUNK_COST));
+        } else {
+            chunkCount = (reads.length + Globals.getINSTANCE().getSTEPS() - 1) / Globals.getINSTANCE().getSTEPS();
+        }
+        chunkCount = Math.max(1, Math.min(chunkCount, reads.length));
+
+        double target = total / chunkCount;
+        List<Read[]> chunkList = new ArrayList<>(chunkCount);
+        List<Double> costList = new ArrayList<>(chunkCount);
+        double prefix = 0d;
+        double chunkCost = 0d;
+        int begin = 0;
+        for (int i = 0; i < reads.length; i++) {
+            prefix += readCosts[i];
+            chunkCost += readCosts[i];
+            if (i == reads.length - 1 || (chunkList.size() < chunkCount - 1 && prefix >= target * (chunkList.size() + 1))) {
+                chunkList.add(Arrays.copyOfRange(reads, begin, i + 1));
+                costList.add(chunkCost);
+                chunkCost = 0d;
+                begin = i + 1;
+            }
+        }
+        this.chunks = chunkList.toArray(new Read[chunkList.size()][]);
+        this.costs = new double[costList.size()];
+        for (int i = 0; i < costs.length; i++) {
+            this.costs[i] = costList.get(i);
+        }
+        this.stripes = stripes(this.costs, Math.min(Globals.getINSTANCE().getFjPool().getParallelism(), this.chunks.length));
+    }
+
+    /**
+     * @return the chunk indices of every stripe in ascending order
+     */
+    private static int[][] stripes(final double[] costs, int stripeCount) {
+        Integer[] byCost = new Integer[costs.length];
+        for (int i = 0; i < byCost.length; i++) {
+            byCost[i] = i;
+        }
+        Arrays.sort(byCost, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int c = Double.compare(costs[o2], costs[o1]);
+                return c != 0 ? c : o1.compareTo(o2);
+            }
+        });
+        List<List<Integer>> lists = new ArrayList<>(stripeCount);
+        double[] loads = new double[stripeCount];
+        for (int s = 0; s < stripeCount; s++) {
+            lists.add(new ArrayList<Integer>());
+        }
+        for (int c : byCost) {
+            int min = 0;
+            for (int s = 1; s < stripeCount; s++) {
+                if (loads[s] < loads[min]) {
+                    min = s;
+                }
+            }
+            lists.get(min).add(c);
+            loads[min] += costs[c];
+        }
+        int[][] stripes = new int[stripeCount][];
+        for (int s = 0; s < stripeCount; s++) {
+            List<Integer> list = lists.get(s);
+            Collections.sort(list);
+            stripes[s] = new int[list.size()];
+            for (int i = 0; i < stripes[s].length; i++) {
+                stripes[s][i] = list.get(i);
+            }
+        }
+        return stripes;
+    }
+
+    /**
+     * @return estimated forward-backward cost of a read
+     */
+    public static double cost(Read read, int K) {
+        return read.getLength() * (double) K * K * (1 + COUNT_WEIGHT * Math.log(Math.max(1, read.getCount())));
+    }
+
+    public int getK() {
+        return K;
+    }
+
+    public int size() {
+        return chunks.length;
+    }
+
+    public Read[] getChunk(int i) {
+        return chunks[i];
+    }
+
+    public double getCost(int i) {
+        return costs[i];
+    }
+
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * @return the indices of the chunks of stripe s in ascending order
+     */
+    public int[] getStripe(int s) {
+        return stripes[s];
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm.parallel;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.model.hmm.Checkpoint;
+import ch.ethz.bsse.quasirecomb.model.hmm.RunState;
+import ch.ethz.bsse.quasirecomb.model.hmm.SingleEM;
+import ch.ethz.bsse.quasirecomb.model.hmm.WarmStart;
+import ch.ethz.bsse.quasirecomb.utils.Random;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs EM restarts one after another until all restarts have been claimed or
+ * the run has been cancelled.
+ * Several lanes on the shared fork/join pool run restarts concurrently, their
+ * E-steps are forked into the same pool and therefore share its threads.
+ * With -resume, finished restarts are taken from the checkpoints and running
+ * restarts continue from their checkpoint.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class RestartLane extends RecursiveAction {
+
+    private final int N;
+    private final int L;
+    private final int K;
+    private final int n;
+    private final Read[] reads;
+    private final AtomicInteger next;
+    private final SingleEM[] runs;
+    private final RunState state;
+    private final OptimalResult warmStart;
+
+    /**
+     * @param warmStart optimum with K - 1 generators that initializes all but
+     * the random restarts, may be null
+     */
+    public RestartLane(int N, int L, int K, int n, Read[] reads, AtomicInteger next, SingleEM[] runs, RunState state, OptimalResult warmStart) {
+        this.N = N;
+        this.L = L;
+        this.K = K;
+        this.n = n;
+        this.reads = reads;
+        this.next = next;
+        this.runs = runs;
+        this.state = state;
+        this.warmStart = warmStart;
+    }
+
+    @Override
+    protected void compute() {
+        for (int i = next.getAndIncrement(); i < runs.length && !state.isCancelled(); i = next.getAndIncrement()) {
+            if (Checkpoint.isResuming()) {
+                runs[i] = Checkpoint.loadRestart(K, L, n, i, state);
+                if (runs[i] != null) {
+                    continue;
+                }
+                Checkpoint.Running running = Checkpoint.loadRunning(K, L, n, i);
+                if (running != null) {
+                    runs[i] = new SingleEM(running, N, reads, Globals.getINSTANCE().getDELTA_LLH(), i, state);
+                    continue;
+                }
+            }
+            if (warmStart == null || WarmStart.isRandom(i, runs.length)) {
+                runs[i] = new SingleEM(N, K, L, n, reads, Globals.getINSTANCE().getDELTA_LLH(), i, state);
+            } else {
+                runs[i] = new SingleEM(WarmStart.split(warmStart, Random.mix(Random.seed(K, i))), N, reads, Globals.getINSTANCE().getDELTA_LLH(), i, state);
+            }
+        }
+    }
+}
@@ -22,14 +22,13 @@ import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
 import ch.ethz.bsse.quasirecomb.informationholder.TauOmega;
 import ch.ethz.bsse.quasirecomb.informationholder.Threading;
 import ch.ethz.bsse.quasirecomb.utils.Frequency;
+import ch.ethz.bsse.quasirecomb.utils.OptimumIO;
 import ch.ethz.bsse.quasirecomb.utils.StatusUpdate;
 import ch.ethz.bsse.quasirecomb.utils.Utils;
 import static ch.ethz.bsse.quasirecomb.utils.Utils.reverse;
 import com.google.common.collect.Lists;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
@@ -67,10 +66,7 @@ public final class ModelSampling extends Utils {
 
     public ModelSampling(String string, String path) {
         try {
-            FileInputStream fis = new FileInputStream(string);
-            try (ObjectInputStream in = new ObjectInputStream(fis)) {
-                or = (OptimalResult) in.readObject();
-            }
+            or = OptimumIO.read(string);
         } catch (IOException | ClassNotFoundException ex) {
             System.err.println(ex);
             Utils.error();
@@ -79,7 +79,7 @@ public class CallableSimulator implements Callable<Pair<Read, Read>> {
         for (int i = 0; i < sb.length(); i++) {
             cigar[i] = true;
         }
-        Read r1 = new Read(BitMagic.splitReadIntoBytes(sb.toString()), start, start + read.length(), cigar);
+        Read r1 = new Read(BitMagic.encode(sb.toString()), start, start + read.length(), cigar);
 
         readArray = new char[length];
         for (int j = 0; j < length; j++) {
@@ -110,7 +110,7 @@ public class CallableSimulator implements Callable<Pair<Read, Read>> {
         for (int i = 0; i < sb2.length(); i++) {
             cigar[i] = true;
         }
-        Read r2 = new Read(BitMagic.splitReadIntoBytes(read), start2, start2 + read.length(),cigar);
+        Read r2 = new Read(BitMagic.encode(read), start2, start2 + read.length(),cigar);
         return Pair.with(r1, r2);
     }
 }
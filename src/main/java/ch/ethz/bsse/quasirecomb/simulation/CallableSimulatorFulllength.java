@@ -75,7 +75,7 @@ public class CallableSimulatorFulllength implements Callable<Read> {
         for (int i = 0; i < sb.length(); i++) {
             cigar[i] = true;
         }
-        Read r1 = new Read(BitMagic.splitReadIntoBytes(sb.toString()), start, start + length, cigar);
+        Read r1 = new Read(BitMagic.encode(sb.toString()), start, start + length, cigar);
 
         return r1;
     }
@@ -77,6 +77,6 @@ public class CallableSimulatorSingle implements Callable<Read> {
         for (int i = 0; i < sb.length(); i++) {
             cigar[i] = true;
         }
-        return new Read(BitMagic.splitReadIntoBytes(sb.toString()), start, start + read.length(), cigar);
+        return new Read(BitMagic.encode(sb.toString()), start, start + read.length(), cigar);
     }
 }
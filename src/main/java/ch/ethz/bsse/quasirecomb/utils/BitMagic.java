@@ -18,10 +18,25 @@
 package ch.ethz.bsse.quasirecomb.utils;
 
 /**
+ * Packed nucleotide sequences over the alphabet {A,C,G,T,-} as {0,1,2,3,4}.
+ *
+ * There are two formats. The legacy format of {@link #pack(byte[])} is a
+ * byte array with a 3-bit header and 3 bits per base that may span two bytes;
+ * it is still used for the haplotypes. Reads use the word format of
+ * {@link #encode(byte[])}: the first long holds the length and every following
+ * long holds BASES_PER_WORD bases with 3 bits each, a base never spans two
+ * words. Thus, a base is read with a single shift and mask and a span of bases
+ * is decoded word by word with {@link #decode(long[], int, int, byte[], int)}.
+ * {@link #convert(byte[])} converts the legacy into the word format.
+ *
  * @author Armin Töpfer (armin.toepfer [at] gmail.com)
  */
 public class BitMagic {
 
+    public static final int BITS = 3;
+    public static final int BASES_PER_WORD = 64 / BITS;
+    private static final long MASK = (1L << BITS) - 1;
+
     private static int getBit(byte[] data, int pos) {
         return data[pos / 8] >> (8 - ((pos % 8) + 1)) & 0x0001;
     }
@@ -181,37 +196,7 @@ public class BitMagic {
     }
 
     public static int getLength(byte[] packed) {
-        StringBuilder buf = new StringBuilder();
-        buf.append((int) (packed[0] >> (8 - (1)) & 0x0001));
-        buf.append((int) (packed[0] >> (8 - (2)) & 0x0001));
-        buf.append((int) (packed[0] >> (8 - (3)) & 0x0001));
-        int hangover = 0;
-        switch (buf.toString()) {
-            case "000":
-                hangover = 0;
-                break;
-            case "001":
-                hangover = 1;
-                break;
-            case "010":
-                hangover = 2;
-                break;
-            case "011":
-                hangover = 3;
-                break;
-            case "100":
-                hangover = 4;
-                break;
-            case "101":
-                hangover = 5;
-                break;
-            case "110":
-                hangover = 6;
-                break;
-            case "111":
-                hangover = 7;
-                break;
-        }
+        int hangover = (packed[0] >> 5) & 0x7;
         return (packed.length * 8 - 3 - hangover) / 3;
     }
     
@@ -248,4 +233,108 @@ public class BitMagic {
         }
         return plain;
     }
+
+    /**
+     * @param s bases {0,1,2,3,4}, other values are stored as 0 like in
+     * {@link #pack(byte[])}
+     * @return the bases in the word format
+     */
+    public static long[] encode(byte[] s) {
+        long[] packed = words(s.length);
+        for (int i = 0; i < s.length; i++) {
+            byte c = s[i];
+            if (c > 0 && c <= 4) {
+                packed[1 + i / BASES_PER_WORD] |= (long) c << (BITS * (i % BASES_PER_WORD));
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * @param s read over {A,C,G,T,-}, other characters are stored as A like
+     * in {@link #splitReadIntoBytes(String)}
+     * @return the read in the word format
+     */
+    public static long[] encode(String s) {
+        long[] packed = words(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            long c;
+            switch (s.charAt(i)) {
+                case 'C':
+                    c = 1;
+                    break;
+                case 'G':
+                    c = 2;
+                    break;
+                case 'T':
+                    c = 3;
+                    break;
+                case '-':
+                    c = 4;
+                    break;
+                default:
+                    c = 0;
+                    break;
+            }
+            packed[1 + i / BASES_PER_WORD] |= c << (BITS * (i % BASES_PER_WORD));
+        }
+        return packed;
+    }
+
+    /**
+     * Converts a sequence of the legacy format of {@link #pack(byte[])} into
+     * the word format.
+     */
+    public static long[] convert(byte[] legacy) {
+        return encode(unpack(legacy));
+    }
+
+    private static long[] words(int length) {
+        long[] packed = new long[1 + (length + BASES_PER_WORD - 1) / BASES_PER_WORD];
+        packed[0] = length;
+        return packed;
+    }
+
+    public static int getLength(long[] packed) {
+        return (int) packed[0];
+    }
+
+    public static byte getPosition(long[] packed, int i) {
+        return (byte) ((packed[1 + i / BASES_PER_WORD] >>> (BITS * (i % BASES_PER_WORD))) & MASK);
+    }
+
+    /**
+     * Decodes the bases [from, to) into dest, starting at destPos.
+     */
+    public static void decode(long[] packed, int from, int to, byte[] dest, int destPos) {
+        if (from >= to) {
+            return;
+        }
+        int w = 1 + from / BASES_PER_WORD;
+        int shift = BITS * (from % BASES_PER_WORD);
+        long word = packed[w] >>> shift;
+        for (int i = from; i < to; i++) {
+            if (shift == BITS * BASES_PER_WORD) {
+                word = packed[++w];
+                shift = 0;
+            }
+            dest[destPos++] = (byte) (word & MASK);
+            word >>>= BITS;
+            shift += BITS;
+        }
+    }
+
+    public static byte[] decode(long[] packed) {
+        byte[] plain = new byte[getLength(packed)];
+        decode(packed, 0, plain.length, plain, 0);
+        return plain;
+    }
+
+    public static String toString(long[] packed) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : decode(packed)) {
+            sb.append(b);
+        }
+        return sb.toString();
+    }
 }
@@ -153,7 +153,7 @@ public class FastaParser {
             String[] split = firstsplit[0].split("_")[1].split("-");
             int begin = Integer.parseInt(split[0]);
             int end = Integer.parseInt(split[1]);
-            byte[] seq = head.getValue();
+            long[] seq = BitMagic.convert(head.getValue());
             String[] secondsplit = firstsplit[1].split("/");
             String tag = secondsplit[0];
             int pairedNumber = Integer.parseInt(secondsplit[1]);
@@ -161,8 +161,8 @@ public class FastaParser {
                 if (pairedReads1.containsKey(tag)) {
                     pairedReads1.get(tag).incCount();
                 } else {
-                    boolean[] cigar = new boolean[seq.length];
-                    for (int i = 0; i < seq.length; i++) {
+                    boolean[] cigar = new boolean[BitMagic.getLength(seq)];
+                    for (int i = 0; i < cigar.length; i++) {
                         cigar[i] = true;
                     }
                     pairedReads1.put(tag, new Read(seq, begin, end, cigar));
@@ -171,8 +171,8 @@ public class FastaParser {
                 if (pairedReads2.containsKey(tag)) {
                     pairedReads2.get(tag).incCount();
                 } else {
-                    boolean[] cigar = new boolean[seq.length];
-                    for (int i = 0; i < seq.length; i++) {
+                    boolean[] cigar = new boolean[BitMagic.getLength(seq)];
+                    for (int i = 0; i < cigar.length; i++) {
                         cigar[i] = true;
                     }
                     pairedReads2.put(tag, new Read(seq, begin, end, cigar));
@@ -0,0 +1,468 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.utils;
+
+import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
+import ch.ethz.bsse.quasirecomb.informationholder.TauOmega;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary format of {@link OptimalResult}. All values are little-endian.
+ *
+ * The file starts with a header of {@link #HEADER} bytes: magic, version,
+ * flags, the scalars of the result, the length of the payload and a directory
+ * with the dimensions, offset and length of every section. The payload
+ * follows, either raw or deflated as a whole. Sections are 8-byte aligned and
+ * hold flat arrays in row-major order:
+ * <ul>
+ * <li>rho[L - 1][K][K], pi[L][K], mu[L][K][n], eps[L] and snv[L][n] as
+ * doubles</li>
+ * <li>TauOmega as the coverage, preceded by its length, and the three
+ * distributions tau watson, omega watson and tau crick, each as the number of
+ * entries followed by (start, length, probability) triples of int, int,
+ * double</li>
+ * </ul>
+ * Missing arrays have the dimension -1.
+ *
+ * Files are written next to the target and moved into place, thus results
+ * that are still mapped keep their content. Raw files are mapped read-only,
+ * compressed files are inflated into memory. The arrays are decoded on first
+ * access, thus the summary does not pay for TauOmega. Files that do not start
+ * with the magic are read by Java deserialization, the format of earlier
+ * versions.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class OptimumIO {
+
+    /**
+     * "QROPTIMU" in little-endian byte order.
+     */
+    public static final long MAGIC = 0x554D4954504F5251L;
+    public static final int VERSION = 1;
+    public static final int COMPRESSED = 1;
+    public static final int HEADER = 256;
+    private static final int RHO = 0;
+    private static final int PI = 1;
+    private static final int MU = 2;
+    private static final int EPS = 3;
+    private static final int SNV = 4;
+    private static final int TAU_OMEGA = 5;
+    private static final int SECTIONS = 6;
+
+    public static void write(String path, OptimalResult or, boolean compress) throws IOException {
+        int[][] dims = new int[SECTIONS][];
+        dims[RHO] = dims(or.getRho());
+        dims[PI] = dims(or.getPi());
+        dims[MU] = dims(or.getMu());
+        dims[EPS] = or.getEps() == null ? new int[]{-1, 0, 0} : new int[]{or.getEps().length, 1, 1};
+        dims[SNV] = dims(or.getSnv());
+        dims[TAU_OMEGA] = or.getTauOmega() == null ? new int[]{-1, 0, 0} : new int[]{1, 1, 1};
+
+        long[] offsets = new long[SECTIONS];
+        long[] lengths = new long[SECTIONS];
+        long payloadLength = 0;
+        for (int s = 0; s < SECTIONS; s++) {
+            offsets[s] = payloadLength;
+            if (dims[s][0] >= 0) {
+                lengths[s] = s == TAU_OMEGA ? length(or.getTauOmega()) : 8L * dims[s][0] * dims[s][1] * dims[s][2];
+            }
+            payloadLength += align(lengths[s]);
+        }
+        if (payloadLength > Integer.MAX_VALUE) {
+            throw new IOException("Optimum too large: " + payloadLength + " bytes");
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate((int) payloadLength).order(ByteOrder.LITTLE_ENDIAN);
+        put(payload, or.getRho());
+        put(payload, or.getPi());
+        put(payload, or.getMu());
+        if (or.getEps() != null) {
+            put(payload, or.getEps());
+        }
+        put(payload, or.getSnv());
+        if (or.getTauOmega() != null) {
+            put(payload, or.getTauOmega());
+        }
+
+        byte[] body = payload.array();
+        int bodyLength = body.length;
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] deflated = new byte[Math.max(64, body.length + body.length / 1000 + 64)];
+            bodyLength = 0;
+            while (!deflater.finished()) {
+                if (bodyLength == deflated.length) {
+                    byte[] larger = new byte[deflated.length * 2];
+                    System.arraycopy(deflated, 0, larger, 0, bodyLength);
+                    deflated = larger;
+                }
+                bodyLength += deflater.deflate(deflated, bodyLength, deflated.length - bodyLength);
+            }
+            deflater.end();
+            body = deflated;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(compress ? COMPRESSED : 0);
+        header.putInt(or.getN());
+        header.putInt(or.getK());
+        header.putInt(or.getL());
+        header.putInt(or.getn());
+        header.putInt(or.getRestarts());
+        header.putInt(or.getStart());
+        header.putDouble(or.getLlh());
+        header.putDouble(or.getBIC());
+        header.putLong(payloadLength);
+        header.putLong(bodyLength);
+        for (int s = 0; s < SECTIONS; s++) {
+            header.putInt(dims[s][0]);
+            header.putInt(dims[s][1]);
+            header.putInt(dims[s][2]);
+            header.putLong(offsets[s]);
+            header.putLong(lengths[s]);
+        }
+        header.rewind();
+
+        File tmp = new File(path + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(tmp, "rw")) {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            ByteBuffer b = ByteBuffer.wrap(body, 0, bodyLength);
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        }
+        Files.move(tmp.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the binary format or, for files of earlier versions, a serialized
+     * OptimalResult.
+     */
+    public static OptimalResult read(String path) throws IOException, ClassNotFoundException {
+        long magic;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            magic = Long.reverseBytes(in.readLong());
+        } catch (IOException ex) {
+            magic = 0;
+        }
+        if (magic != MAGIC) {
+            return readLegacy(path);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.getLong();
+            int version = header.getInt();
+            if (version > VERSION) {
+                throw new IOException("Unsupported optimum version " + version + ": " + path);
+            }
+            int flags = header.getInt();
+            int N = header.getInt();
+            int K = header.getInt();
+            int L = header.getInt();
+            int n = header.getInt();
+            int restarts = header.getInt();
+            int start = header.getInt();
+            double llh = header.getDouble();
+            double BIC = header.getDouble();
+            long payloadLength = header.getLong();
+            long bodyLength = header.getLong();
+            int[][] dims = new int[SECTIONS][3];
+            long[] offsets = new long[SECTIONS];
+            for (int s = 0; s < SECTIONS; s++) {
+                dims[s][0] = header.getInt();
+                dims[s][1] = header.getInt();
+                dims[s][2] = header.getInt();
+                offsets[s] = header.getLong();
+                header.getLong();
+            }
+            ByteBuffer payload;
+            if ((flags & COMPRESSED) != 0) {
+                byte[] deflated = new byte[(int) bodyLength];
+                channel.map(FileChannel.MapMode.READ_ONLY, HEADER, bodyLength).get(deflated);
+                Inflater inflater = new Inflater();
+                inflater.setInput(deflated);
+                byte[] inflated = new byte[(int) payloadLength];
+                try {
+                    int length = 0;
+                    while (length < inflated.length && !inflater.finished()) {
+                        length += inflater.inflate(inflated, length, inflated.length - length);
+                        if (inflater.needsInput()) {
+                            break;
+                        }
+                    }
+                    if (length != inflated.length) {
+                        throw new IOException("Truncated optimum: " + path);
+                    }
+                } catch (DataFormatException ex) {
+                    throw new IOException("Corrupt optimum: " + path, ex);
+                } finally {
+                    inflater.end();
+                }
+                payload = ByteBuffer.wrap(inflated);
+            } else {
+                payload = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, payloadLength);
+            }
+            return new MappedOptimalResult(N, K, L, n, llh, BIC, restarts, start, payload.order(ByteOrder.LITTLE_ENDIAN), dims, offsets);
+        }
+    }
+
+    /**
+     * Reads a serialized OptimalResult.
+     */
+    public static OptimalResult readLegacy(String path) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(path))) {
+            return (OptimalResult) in.readObject();
+        }
+    }
+
+    private static long align(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    private static int[] dims(double[][][] a) {
+        return a == null ? new int[]{-1, 0, 0} : new int[]{a.length, a.length == 0 ? 0 : a[0].length, a.length == 0 || a[0].length == 0 ? 0 : a[0][0].length};
+    }
+
+    private static int[] dims(double[][] a) {
+        return a == null ? new int[]{-1, 0, 0} : new int[]{a.length, a.length == 0 ? 0 : a[0].length, 1};
+    }
+
+    private static long length(TauOmega tauOmega) {
+        long length = align(4L + 4L * tauOmega.getCoverage().length);
+        length += 8 + 16L * entries(tauOmega.getTauWatsonMap());
+        length += 8 + 16L * entries(tauOmega.getOmegaWatsonMap());
+        length += 8 + 16L * entries(tauOmega.getTauCrickMap());
+        return length;
+    }
+
+    private static int entries(Map<Integer, Map<Integer, Double>> map) {
+        int entries = 0;
+        for (Map<Integer, Double> m : map.values()) {
+            entries += m.size();
+        }
+        return entries;
+    }
+
+    private static void put(ByteBuffer b, double[][][] a) {
+        if (a != null) {
+            for (double[][] x : a) {
+                put(b, x);
+            }
+        }
+    }
+
+    private static void put(ByteBuffer b, double[][] a) {
+        if (a != null) {
+            for (double[] x : a) {
+                put(b, x);
+            }
+        }
+    }
+
+    private static void put(ByteBuffer b, double[] a) {
+        b.asDoubleBuffer().put(a);
+        b.position(b.position() + 8 * a.length);
+    }
+
+    private static void put(ByteBuffer b, TauOmega tauOmega) {
+        int[] coverage = tauOmega.getCoverage();
+        b.putInt(coverage.length);
+        b.asIntBuffer().put(coverage);
+        b.position(b.position() + 4 * coverage.length);
+        b.position((int) align(b.position()));
+        put(b, tauOmega.getTauWatsonMap());
+        put(b, tauOmega.getOmegaWatsonMap());
+        put(b, tauOmega.getTauCrickMap());
+    }
+
+    private static void put(ByteBuffer b, Map<Integer, Map<Integer, Double>> map) {
+        b.putLong(entries(map));
+        for (Map.Entry<Integer, Map<Integer, Double>> s : map.entrySet()) {
+            for (Map.Entry<Integer, Double> l : s.getValue().entrySet()) {
+                b.putInt(s.getKey());
+                b.putInt(l.getKey());
+                b.putDouble(l.getValue());
+            }
+        }
+    }
+
+    private static Map<Integer, Map<Integer, Double>> getMap(ByteBuffer b) {
+        Map<Integer, Map<Integer, Double>> map = new HashMap<>();
+        long entries = b.getLong();
+        for (long i = 0; i < entries; i++) {
+            int s = b.getInt();
+            int l = b.getInt();
+            double f = b.getDouble();
+            Map<Integer, Double> m = map.get(s);
+            if (m == null) {
+                m = new HashMap<>();
+                map.put(s, m);
+            }
+            m.put(l, f);
+        }
+        return map;
+    }
+
+    /**
+     * OptimalResult backed by the payload of a binary file, every section is
+     * decoded on first access.
+     */
+    private static class MappedOptimalResult extends OptimalResult {
+
+        private static final long serialVersionUID = 1L;
+        private transient ByteBuffer payload;
+        private final int[][] dims;
+        private final long[] offsets;
+        private double[][][] rho;
+        private double[][] pi;
+        private double[][][] mu;
+        private double[] eps;
+        private double[][] snv;
+        private TauOmega tauOmega;
+
+        MappedOptimalResult(int N, int K, int L, int n, double llh, double BIC, int restarts, int start, ByteBuffer payload, int[][] dims, long[] offsets) {
+            super(N, K, L, n, null, null, null, llh, BIC, null, restarts, null, null, start);
+            this.payload = payload;
+            this.dims = dims;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public synchronized double[][][] getRho() {
+            if (rho == null) {
+                rho = get3(RHO);
+            }
+            return rho;
+        }
+
+        @Override
+        public synchronized double[][] getPi() {
+            if (pi == null) {
+                pi = get2(PI);
+            }
+            return pi;
+        }
+
+        @Override
+        public synchronized double[][][] getMu() {
+            if (mu == null) {
+                mu = get3(MU);
+            }
+            return mu;
+        }
+
+        @Override
+        public synchronized double[] getEps() {
+            if (eps == null && dims[EPS][0] >= 0) {
+                eps = new double[dims[EPS][0]];
+                section(EPS).asDoubleBuffer().get(eps);
+            }
+            return eps;
+        }
+
+        @Override
+        public synchronized double[][] getSnv() {
+            if (snv == null) {
+                snv = get2(SNV);
+            }
+            return snv;
+        }
+
+        @Override
+        public synchronized TauOmega getTauOmega() {
+            if (tauOmega == null && dims[TAU_OMEGA][0] >= 0) {
+                ByteBuffer b = section(TAU_OMEGA);
+                int[] coverage = new int[b.getInt()];
+                b.asIntBuffer().get(coverage);
+                b.position((int) align(b.position() + 4 * coverage.length));
+                Map<Integer, Map<Integer, Double>> tauWatson = getMap(b);
+                Map<Integer, Map<Integer, Double>> omegaWatson = getMap(b);
+                Map<Integer, Map<Integer, Double>> tauCrick = getMap(b);
+                tauOmega = new TauOmega(tauWatson, omegaWatson, tauCrick, coverage);
+            }
+            return tauOmega;
+        }
+
+        private ByteBuffer section(int s) {
+            ByteBuffer b = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            b.position((int) offsets[s]);
+            return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private double[][] get2(int s) {
+            if (dims[s][0] < 0) {
+                return null;
+            }
+            double[][] a = new double[dims[s][0]][dims[s][1]];
+            ByteBuffer b = section(s);
+            for (double[] x : a) {
+                b.asDoubleBuffer().get(x);
+                b.position(b.position() + 8 * x.length);
+            }
+            return a;
+        }
+
+        private double[][][] get3(int s) {
+            if (dims[s][0] < 0) {
+                return null;
+            }
+            double[][][] a = new double[dims[s][0]][dims[s][1]][dims[s][2]];
+            ByteBuffer b = section(s);
+            for (double[][] x : a) {
+                for (double[] y : x) {
+                    b.asDoubleBuffer().get(y);
+                    b.position(b.position() + 8 * y.length);
+                }
+            }
+            return a;
+        }
+
+        /**
+         * Java serialization stores a plain OptimalResult with all sections.
+         */
+        private Object writeReplace() throws ObjectStreamException {
+            return new OptimalResult(getN(), getK(), getL(), getn(), getRho(), getPi(), getMu(), getLlh(), getBIC(), getEps(), getRestarts(), getTauOmega(), getSnv(), getStart());
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package ch.ethz.bsse.quasirecomb.utils;
 
 import cc.mallet.types.Dirichlet;
+import cc.mallet.util.Randoms;
 import ch.ethz.bsse.quasirecomb.informationholder.Globals;
 import java.util.Arrays;
 
@@ -26,10 +27,35 @@ import java.util.Arrays;
  */
 public class Random {
 
-    private static Dirichlet[] rhoDir;
-    public static Dirichlet muDir;
     private static Dirichlet[] sigmaDir;
 
+    /**
+     * @return seed of the given restart with K generators, derived from -seed
+     * if it is set and random otherwise
+     */
+    public static long seed(int K, int restart) {
+        Long seed = Globals.getINSTANCE().getSEED();
+        if (seed == null) {
+            return (long) (Math.random() * Long.MAX_VALUE);
+        }
+        return mix(mix(seed + K) + restart);
+    }
+
+    /**
+     * SplitMix64 finalizer, neighbouring inputs give unrelated seeds.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static Randoms randoms(long seed) {
+        Randoms rnd = new Randoms();
+        rnd.setSeed(seed);
+        return rnd;
+    }
+
     public static double[][][][] generateInitSigma(int Ldec, int K) {
         if (sigmaDir == null) {
             sigmaDir[0] = new Dirichlet(new double[]{1, 0.01});
@@ -46,9 +72,9 @@ public class Random {
         return sigma;
     }
 
-    public static double[][][] generateInitRho(int Ldec, int K) {
+    public static double[][][] generateInitRho(int Ldec, int K, Randoms rnd) {
 //        if (rhoDir == null || rhoDir.length != K) {
-        rhoDir = new Dirichlet[K];
+        Dirichlet[] rhoDir = new Dirichlet[K];
         for (int k = 0; k < K; k++) {
             double[] d = new double[K];
             for (int l = 0; l < K; l++) {
@@ -61,7 +87,7 @@ public class Random {
         if (!Globals.getINSTANCE().isNO_RECOMB()) {
             for (int j = 0; j < Ldec; j++) {
                 for (int k = 0; k < K; k++) {
-                    rho[j][k] = rhoDir[k].nextDistribution();
+                    rho[j][k] = rhoDir[k].nextDistribution(rnd);
                 }
             }
         } else {
@@ -76,7 +102,7 @@ public class Random {
         return rho;
     }
 
-    public static double[][] generateInitPi(int L, int K) {
+    public static double[][] generateInitPi(int L, int K, Randoms rnd) {
         if (Globals.getINSTANCE().getPRIOR() != null) {
             double[][] pi = new double[L][K];
             for (int j = 0; j < L; j++) {
@@ -88,7 +114,7 @@ public class Random {
         } else if (Globals.getINSTANCE().isNO_RECOMB()) {
             double[][] pis = new double[L][K];
             for (int j = 0; j < L; j++) {
-                pis[j] = new Dirichlet(K, 2).nextDistribution();
+                pis[j] = new Dirichlet(K, 2).nextDistribution(rnd);
             }
             return pis;
         } else {
@@ -102,7 +128,7 @@ public class Random {
         }
     }
 
-    public static double[][][] generateMuInit(int L, int K, int n) {
+    public static double[][][] generateMuInit(int L, int K, int n, Randoms rnd) {
         boolean hasPrior = Globals.getINSTANCE().getPRIOR() != null;
         double[][][] mu = new double[L][K][n];
 
@@ -119,11 +145,11 @@ public class Random {
                             priorMu[v] = 0.001;
                         }
                     }
-                    mu[j][k] = new Dirichlet(priorMu).nextDistribution();
+                    mu[j][k] = new Dirichlet(priorMu).nextDistribution(rnd);
                 }
             }
         } else {
-            muDir = new Dirichlet(n, 1);
+            Dirichlet muDir = new Dirichlet(n, 1);
             for (int j = L - 1; j >= 0; j--) {
                 for (int k = K - 1; k >= 0; k--) {
 
@@ -132,7 +158,7 @@ public class Random {
                         d[v] = 1d / n;
                     }
                     if (Globals.getINSTANCE().isNO_RECOMB()) {
-                        mu[j][k] = muDir.nextDistribution();
+                        mu[j][k] = muDir.nextDistribution(rnd);
                     } else {
                         for (int v = 0; v < n; v++) {
                             mu[j][k][v] = 1d / n;
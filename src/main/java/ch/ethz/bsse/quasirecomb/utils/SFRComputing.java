@@ -20,7 +20,7 @@ package ch.ethz.bsse.quasirecomb.utils;
 import ch.ethz.bsse.quasirecomb.informationholder.Globals;
 import ch.ethz.bsse.quasirecomb.informationholder.ReadTMP;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import net.sf.samtools.CigarElement;
@@ -40,6 +40,23 @@ import net.sf.samtools.SAMRecord;
  */
 public class SFRComputing implements Callable<List<ReadTMP>> {
 
+    /**
+     * Probability that a base is correct, indexed by the unsigned PHRED byte.
+     * A quality of 0 is mapped to 0.01.
+     */
+    private static final double[] PHRED = new double[256];
+    private static final byte GAP = Utils.convertBase((byte) '-');
+
+    static {
+        for (int i = 0; i < PHRED.length; i++) {
+            double q = 1 - Math.pow(10, -((byte) i) / 10d);
+            if (q == 0) {
+//                q = 0.79432823472;
+                q = 0.01;
+            }
+            PHRED[i] = q;
+        }
+    }
     final List<SAMRecord> samRecordList;
 
     public SFRComputing(final List<SAMRecord> samRecord) {
@@ -48,7 +65,7 @@ public class SFRComputing implements Callable<List<ReadTMP>> {
 
     @Override
     public List<ReadTMP> call() {
-        List<ReadTMP> results = new LinkedList<>();
+        List<ReadTMP> results = new ArrayList<>(samRecordList.size());
         for (SAMRecord s : samRecordList) {
             ReadTMP r = single(s);
             if (r != null) {
@@ -58,6 +75,12 @@ public class SFRComputing implements Callable<List<ReadTMP>> {
         return results;
     }
 
+    /**
+     * Projects a record onto the reference. Matches keep their base and
+     * quality, insertions and soft clips are skipped and deletions become gaps.
+     * The bases, qualities and CIGAR flags are written into arrays of the
+     * reference length of the record, which are then clipped to the window.
+     */
     private ReadTMP single(SAMRecord samRecord) {
         try {
             if (samRecord.getAlignmentBlocks().isEmpty()) {
@@ -65,17 +88,19 @@ public class SFRComputing implements Callable<List<ReadTMP>> {
             }
             int refStart = samRecord.getAlignmentStart() - 1;
             int readStart = 0;
-            int readLength_ = samRecord.getCigar().getReadLength();
-            List<Byte> buildRead = new ArrayList<>(readLength_);
-            List<Double> buildQuality = new ArrayList<>(readLength_);
+            int length = samRecord.getCigar().getReferenceLength();
+            byte[] readBases = new byte[length];
+            double[] quality = new double[length];
+            boolean[] cigar = new boolean[length];
             boolean hasQuality;
             if (Globals.getINSTANCE().isNO_QUALITY()) {
                 hasQuality = false;
             } else {
                 hasQuality = samRecord.getBaseQualities().length > 1;
             }
-            List<Boolean> buildCigar = new ArrayList<>(readLength_);
             byte[] readBases_pure = samRecord.getReadBases();
+            byte[] baseQualities = samRecord.getBaseQualities();
+            int j = 0;
             for (CigarElement c : samRecord.getCigar().getCigarElements()) {
                 switch (c.getOperator()) {
                     case X:
@@ -85,42 +110,29 @@ public class SFRComputing implements Callable<List<ReadTMP>> {
                             System.out.println("\nInput alignment is corrupt.\nCIGAR is longer than actual read-length.");
                             System.exit(9);
                         }
-                        for (int i = 0; i < c.getLength(); i++) {
-                            byte b = readBases_pure[readStart];
-                            buildRead.add(b);
-                            if (hasQuality) {
-                                double q = 1 - Math.pow(10, -(samRecord.getBaseQualities()[readStart]) / 10d);
-                                if (q == 0) {
-//                                    q = 0.79432823472;
-                                    q = 0.01;
-                                }
-                                buildQuality.add(q);
-                            } else {
-                                buildQuality.add(1d);
-                            }
-                            buildCigar.add(true);
-                            readStart++;
+                        for (int i = 0; i < c.getLength(); i++, j++, readStart++) {
+                            readBases[j] = Utils.convertBase(readBases_pure[readStart]);
+                            quality[j] = hasQuality ? PHRED[baseQualities[readStart] & 0xFF] : 1d;
+                            cigar[j] = true;
                         }
                         break;
                     case I:
                         readStart += c.getLength();
                         break;
                     case D:
-                        for (int i = 0; i < c.getLength(); i++) {
-                            buildRead.add((byte) "-".charAt(0));
-                            double q;
-
-                            if (c.getLength() % 3 == 0) {
-                                q = 0.79432823472;
+                        double q;
+                        if (c.getLength() % 3 == 0) {
+                            q = 0.79432823472;
+                        } else {
+                            if (Globals.getINSTANCE().isNO_GAPS()) {
+                                q = 0.0;
                             } else {
-                                if (Globals.getINSTANCE().isNO_GAPS()) {
-                                    q = 0.0;
-                                } else {
-                                    q = 0.01;
-                                }
+                                q = 0.01;
                             }
-                            buildQuality.add(q);
-                            buildCigar.add(false);
+                        }
+                        for (int i = 0; i < c.getLength(); i++, j++) {
+                            readBases[j] = GAP;
+                            quality[j] = q;
                         }
                         break;
                     case S:
@@ -141,149 +153,21 @@ public class SFRComputing implements Callable<List<ReadTMP>> {
                 }
             }
 
-            double[] quality = null;
-            boolean[] cigar = null;
-            //---
-            //cut read
-            byte[] readBases = Utils.convertRead(buildRead.toArray(new Byte[buildRead.size()]));
-            int readEnd = refStart + readBases.length;
-
-            double delCountSum = 0;
-            double delCountMax = 0;
-            double delCount = 0;
+            //cut read to [from, to) relative to the read
+            int from = 0;
+            int to = length;
             if (Globals.getINSTANCE().isWINDOW()) {
-
-                int from = Globals.getINSTANCE().getWINDOW_BEGIN();
-                int to = Globals.getINSTANCE().getWINDOW_END();
-                int length = readBases.length;
-                try {
-                    if (refStart > to || readEnd < from) {
-                        return null;
-                    }
-                    //leftover
-                    if (refStart < from && readEnd <= to) {
-//                        readBases = Arrays.copyOfRange(readBases, from - refStart, length);
-//                        cigar = Arrays.copyOfRange(cigar, from - refStart, length);
-//                        quality = Arrays.copyOfRange(quality, from - refStart, length);
-                        int l = length - (from - refStart);
-                        byte[] readBases_ = new byte[l];
-                        cigar = new boolean[l];
-                        quality = new double[l];
-                        for (int i = from - refStart, j = 0; i < length; i++, j++) {
-                            readBases_[j] = readBases[i];
-                            cigar[j] = buildCigar.get(i);
-                            quality[j] = buildQuality.get(i);
-
-                            if (!cigar[j]) {
-                                delCount++;
-                                delCountSum++;
-                            } else {
-                                if (delCount > delCountMax) {
-                                    delCountMax = delCount;
-                                }
-                                delCount = 0;
-                            }
-                        }
-                        readBases = readBases_;
-                        refStart = from;
-                    } else if (refStart >= from && readEnd > to) {
-                        //rightover
-//                        readBases = Arrays.copyOfRange(readBases, 0, to - refStart);
-//                        cigar = Arrays.copyOfRange(cigar, 0, to - refStart);
-//                        quality = Arrays.copyOfRange(quality, 0, to - refStart);
-
-                        int l = to - refStart;
-                        byte[] readBases_ = new byte[l];
-                        cigar = new boolean[l];
-                        quality = new double[l];
-                        for (int i = 0; i < l; i++) {
-                            readBases_[i] = readBases[i];
-                            cigar[i] = buildCigar.get(i);
-                            quality[i] = buildQuality.get(i);
-
-                            if (!cigar[i]) {
-                                delCount++;
-                                delCountSum++;
-                            } else {
-                                if (delCount > delCountMax) {
-                                    delCountMax = delCount;
-                                }
-                                delCount = 0;
-                            }
-                        }
-                        readBases = readBases_;
-                    } else if (refStart >= from && readEnd <= to) {
-                        //inner
-                        int l = buildCigar.size();
-                        cigar = new boolean[l];
-                        quality = new double[l];
-                        for (int i = 0; i < l; i++) {
-                            cigar[i] = buildCigar.get(i);
-                            quality[i] = buildQuality.get(i);
-
-                            if (!cigar[i]) {
-                                delCount++;
-                                delCountSum++;
-                            } else {
-                                if (delCount > delCountMax) {
-                                    delCountMax = delCount;
-                                }
-                                delCount = 0;
-                            }
-                        }
-                    } else if (refStart < from && readEnd > to) {
-                        //outer
-//                        readBases = Arrays.copyOfRange(readBases, from - refStart, to - refStart);
-//                        cigar = Arrays.copyOfRange(cigar, from - refStart, to - refStart);
-//                        quality = Arrays.copyOfRange(quality, from - refStart, to - refStart);
-                        int l = (to - refStart) - (from - refStart);
-                        byte[] readBases_ = new byte[l];
-                        cigar = new boolean[l];
-                        quality = new double[l];
-                        for (int i = from - refStart, j = 0; i < to - refStart; i++, j++) {
-                            readBases_[j] = readBases[i];
-                            cigar[j] = buildCigar.get(i);
-                            quality[j] = buildQuality.get(i);
-
-                            if (!cigar[j]) {
-                                delCount++;
-                                delCountSum++;
-                            } else {
-                                if (delCount > delCountMax) {
-                                    delCountMax = delCount;
-                                }
-                                delCount = 0;
-                            }
-                        }
-                        readBases = readBases_;
-                        refStart = from;
-                    } else {
-                        System.err.println("");
-                        System.err.println("start: " + refStart + "\t+end:" + readEnd);
-                        System.err.println("w00t");
-                    }
-                } catch (Exception e) {
-                    System.err.println("");
-                    System.err.println("start: " + refStart + "\t+end:" + readEnd);
-                    System.err.println("w00t");
+                int readEnd = refStart + length;
+                if (refStart > Globals.getINSTANCE().getWINDOW_END() || readEnd < Globals.getINSTANCE().getWINDOW_BEGIN()) {
+                    return null;
                 }
-            } else {
-                int l = buildCigar.size();
-                cigar = new boolean[l];
-                quality = new double[l];
-                for (int i = 0; i < l; i++) {
-                    cigar[i] = buildCigar.get(i);
-                    quality[i] = buildQuality.get(i);
-
-                    if (!cigar[i]) {
-                        delCount++;
-                        delCountSum++;
-                    } else {
-                        if (delCount > delCountMax) {
-                            delCountMax = delCount;
-                        }
-                        delCount = 0;
-                    }
+                from = Math.max(0, Globals.getINSTANCE().getWINDOW_BEGIN() - refStart);
+                to = Math.min(length, Globals.getINSTANCE().getWINDOW_END() - refStart);
+                refStart += from;
+                if (from > 0 || to < length) {
+                    readBases = Arrays.copyOfRange(readBases, from, to);
+                    quality = Arrays.copyOfRange(quality, from, to);
+                    cigar = Arrays.copyOfRange(cigar, from, to);
                 }
             }
 
@@ -291,6 +175,20 @@ public class SFRComputing implements Callable<List<ReadTMP>> {
                 return null;
             }
 
+            double delCountSum = 0;
+            double delCountMax = 0;
+            double delCount = 0;
+            for (int i = 0; i < cigar.length; i++) {
+                if (!cigar[i]) {
+                    delCount++;
+                    delCountSum++;
+                } else {
+                    if (delCount > delCountMax) {
+                        delCountMax = delCount;
+                    }
+                    delCount = 0;
+                }
+            }
             if (delCount > delCountMax) {
                 delCountMax = delCount;
             }
@@ -299,7 +197,7 @@ public class SFRComputing implements Callable<List<ReadTMP>> {
                     return null;
                 }
             }
-            if (cigar == null || delCountSum / cigar.length > Globals.getINSTANCE().getMAX_PERC_DEL()) {
+            if (delCountSum / cigar.length > Globals.getINSTANCE().getMAX_PERC_DEL()) {
                 return null;
             }
 
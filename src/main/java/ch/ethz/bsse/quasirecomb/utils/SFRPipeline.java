@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.utils;
+
+import ch.ethz.bsse.quasirecomb.informationholder.ReadTMP;
+import ch.ethz.bsse.quasirecomb.informationholder.Threading;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import net.sf.samtools.AbstractBAMFileIndex;
+import net.sf.samtools.BAMIndex;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMRecordIterator;
+
+/**
+ * Streams a BAM file through the CIGAR projection of {@link SFRComputing}.
+ *
+ * A reader thread decodes the records into batches of BATCH records and hands
+ * every batch to the executor of {@link Threading}. The futures are queued in
+ * file order and the consumer takes them with {@link #next()}, thus the reads
+ * arrive in the same order as in the file. The queue holds
+ * BATCHES_PER_THREAD batches per thread; once it is full the reader blocks
+ * until the consumer catches up. Hence, the number of records and parsed reads
+ * in memory does not depend on the size of the file.
+ *
+ * If windows are given and the BAM file is indexed, only the records that
+ * overlap a window are decoded. All windows on all references are read in a
+ * single pass of indexed queries; overlapping windows are merged. The windows
+ * are not clipped here, this is still done by {@link SFRComputing}.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class SFRPipeline implements Runnable {
+
+    public static final int BATCH = 1024;
+    private static final int BATCHES_PER_THREAD = 4;
+    private static final Future<List<ReadTMP>> END = done(Collections.<ReadTMP>emptyList());
+    private final File bam;
+    private final int[][] windows;
+    private final BlockingQueue<Future<List<ReadTMP>>> queue;
+    private volatile RuntimeException failure;
+
+    /**
+     * @param windows 0-based windows {begin, end} like WINDOW_BEGIN and
+     * WINDOW_END, all records are read if there are none
+     */
+    public SFRPipeline(File bam, int[]... windows) {
+        this.bam = bam;
+        this.windows = windows;
+        this.queue = new ArrayBlockingQueue<>(BATCHES_PER_THREAD * Threading.getINSTANCE().getThreads());
+    }
+
+    /**
+     * Starts the reader thread.
+     */
+    public SFRPipeline start() {
+        Thread t = new Thread(this, "quasirecomb-reader");
+        t.setDaemon(true);
+        t.start();
+        return this;
+    }
+
+    @Override
+    public void run() {
+        SAMFileReader sfr = null;
+        SAMRecordIterator records = null;
+        try {
+            sfr = new SAMFileReader(bam);
+            records = this.records(sfr);
+            double size = windows.length == 0 ? size(sfr) : 0;
+            int counter = 0;
+            List<SAMRecord> batch = new ArrayList<>(BATCH);
+            while (records.hasNext()) {
+                batch.add(records.next());
+                if (batch.size() == BATCH) {
+                    queue.put(Threading.getINSTANCE().getExecutor().submit(new SFRComputing(batch)));
+                    batch = new ArrayList<>(BATCH);
+                    counter += BATCH;
+                    if (size > 0) {
+                        StatusUpdate.getINSTANCE().print("Parsing\t\t" + Math.min(100, Math.round((counter / size) * 100)) + "%");
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                queue.put(Threading.getINSTANCE().getExecutor().submit(new SFRComputing(batch)));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            failure = ex;
+        } finally {
+            if (records != null) {
+                records.close();
+            }
+            if (sfr != null) {
+                sfr.close();
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Blocks until the next batch has been parsed.
+     *
+     * @return the parsed reads of the next batch in file order or null if all
+     * records have been consumed
+     * @throws RuntimeException if the reader or the projection failed
+     */
+    public List<ReadTMP> next() throws InterruptedException {
+        Future<List<ReadTMP>> f = queue.take();
+        if (f == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        try {
+            return f.get();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * @return the records overlapping the windows if there is an index, all
+     * records otherwise
+     */
+    private SAMRecordIterator records(SAMFileReader sfr) {
+        if (windows.length == 0 || !sfr.hasIndex()) {
+            return sfr.iterator();
+        }
+        int references = sfr.getFileHeader().getSequenceDictionary().size();
+        List<SAMFileReader.QueryInterval> intervals = new ArrayList<>();
+        for (int i = 0; i < references; i++) {
+            for (int[] w : windows) {
+                //a read is kept if it starts at or before the 0-based end and ends at or after the 0-based begin
+                intervals.add(new SAMFileReader.QueryInterval(i, Math.max(1, w[0]), w[1] + 1));
+            }
+        }
+        return sfr.queryOverlapping(SAMFileReader.QueryInterval.optimizeIntervals(intervals.toArray(new SAMFileReader.QueryInterval[intervals.size()])));
+    }
+
+    /**
+     * @return number of aligned records according to the index or 0 if there
+     * is no index
+     */
+    private static double size(SAMFileReader sfr) {
+        if (!sfr.hasIndex()) {
+            return 0;
+        }
+        BAMIndex index = sfr.getIndex();
+        if (!(index instanceof AbstractBAMFileIndex)) {
+            return 0;
+        }
+        double size = 0;
+        AbstractBAMFileIndex bamIndex = (AbstractBAMFileIndex) index;
+        for (int i = 0; i < bamIndex.getNumberOfReferences(); i++) {
+            size += bamIndex.getMetaData(i).getAlignedRecordCount();
+        }
+        return size;
+    }
+
+    private static <T> Future<T> done(T value) {
+        FutureTask<T> f = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, value);
+        f.run();
+        return f;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.utils;
+
+import cc.mallet.types.Dirichlet;
+
+/**
+ * Digamma function and exp(digamma) as used by the regularization of the
+ * M-step.
+ *
+ * The values agree with {@link Dirichlet#digamma(double)}, whose higher order
+ * coefficients are integer fractions and evaluate to zero. Hence, the series
+ * is psi(z) = log(z) - 1 / (2z) after shifting z above
+ * {@link Dirichlet#DIGAMMA_LARGE} by the recurrence psi(z) = psi(z + 1) - 1 /
+ * z. For exp(digamma) the logarithm cancels: exp(psi(z)) = w * exp(-1 / (2w) -
+ * s) with the shifted argument w and the sum s of the recurrence terms. If no
+ * shift is needed, exp(-1 / (2w)) is evaluated by a Taylor polynomial, thus
+ * neither exp nor log is called. The relative error to Math.exp(digamma) is
+ * below {@link #TOLERANCE}.
+ *
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class SpecialFunctions {
+
+    /**
+     * Maximal relative deviation of {@link #expDigamma(double)} from
+     * Math.exp(Dirichlet.digamma(z)), as long as the result is not subnormal.
+     */
+    public static final double TOLERANCE = 1e-13;
+    private static final double EXP_EULER = Math.exp(Dirichlet.EULER_MASCHERONI);
+
+    public static double digamma(double z) {
+        if (z < Dirichlet.DIGAMMA_SMALL) {
+            return Dirichlet.EULER_MASCHERONI - (1 / z);
+        }
+        double psi = 0;
+        while (z < Dirichlet.DIGAMMA_LARGE) {
+            psi -= 1 / z;
+            z++;
+        }
+        return psi + Math.log(z) - .5 / z;
+    }
+
+    /**
+     * @return exp(digamma(z)) and 0 for z = 0
+     */
+    public static double expDigamma(double z) {
+        if (z == 0d) {
+            return 0d;
+        }
+        if (z < Dirichlet.DIGAMMA_SMALL) {
+            return EXP_EULER * Math.exp(-1 / z);
+        }
+        if (z >= Dirichlet.DIGAMMA_LARGE) {
+            return z * expNegHalfInverse(.5 / z);
+        }
+        double shift = 0;
+        while (z < Dirichlet.DIGAMMA_LARGE) {
+            shift -= 1 / z;
+            z++;
+        }
+        return z * Math.exp(shift - .5 / z);
+    }
+
+    /**
+     * Computes exp(digamma) of z[from, to) into out[from, to). Both arrays may
+     * be the same.
+     *
+     * @param memo precomputed values, may be null
+     */
+    public static void expDigamma(double[] z, double[] out, int from, int to, ExpDigammaMemo memo) {
+        for (int i = from; i < to; i++) {
+            double x = z[i];
+            out[i] = memo == null ? expDigamma(x) : memo.get(x);
+        }
+    }
+
+    /**
+     * exp(-x) for 0 <= x <= 1 / (2 * DIGAMMA_LARGE) by a Taylor polynomial of
+     * degree 8, the truncation error is below 1e-17.
+     */
+    private static double expNegHalfInverse(double x) {
+        return 1 - x * (1 - x / 2 * (1 - x / 3 * (1 - x / 4 * (1 - x / 5 * (1 - x / 6 * (1 - x / 7 * (1 - x / 8)))))));
+    }
+
+    /**
+     * Immutable table of exp(digamma) for a few arguments that occur very
+     * often, i.e. the hyperparameters that are added to zero counts. Other
+     * arguments are computed.
+     */
+    public static class ExpDigammaMemo {
+
+        private final double[] keys;
+        private final double[] values;
+
+        public ExpDigammaMemo(double... keys) {
+            this.keys = keys.clone();
+            this.values = new double[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                this.values[i] = expDigamma(keys[i]);
+            }
+        }
+
+        public double get(double z) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == z) {
+                    return values[i];
+                }
+            }
+            return expDigamma(z);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package ch.ethz.bsse.quasirecomb.utils;
 
 import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.Threading;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -30,7 +31,6 @@ public class StatusUpdate {
 
     private String oldOut = "";
     private double hammingCount = 0;
-    private double PERCENTAGE = 0;
     private long start = System.currentTimeMillis();
     private final DateFormat df = new SimpleDateFormat("HH:mm:ss");
     private static final StatusUpdate INSTANCE = new StatusUpdate();
@@ -43,26 +43,24 @@ public class StatusUpdate {
         df.setTimeZone(TimeZone.getTimeZone("GMT"));
     }
 
-    public void incPercentage() {
-        PERCENTAGE += 100d / Globals.getINSTANCE().getREPEATS();
-    }
-
-    public void printBIC(int K, int bic) {
+    public void printBIC(int K, int percentage, int bic) {
         System.out.print("\r                                                                                                                                                   ");
         if (Globals.getINSTANCE().isMODELSELECTION()) {
-            System.out.print("\r" + time() + " Model selection [K " + K + "]:\t" + Math.round(PERCENTAGE * 1000) / 1000 + "%\t[BIC: " + (int) bic + "]                 ");
+            System.out.print("\r" + time() + " Model selection [K " + K + "]:\t" + percentage + "%\t[BIC: " + (int) bic + "]" + threads() + "                 ");
         } else {
-            System.out.print("\r" + time() + " Model training  [K " + K + "]:\t" + Math.round(PERCENTAGE * 1000) / 1000 + "%\t[BIC: " + (int) bic + "]                 ");
+            System.out.print("\r" + time() + " Model training  [K " + K + "]:\t" + percentage + "%\t[BIC: " + (int) bic + "]" + threads() + "                 ");
         }
     }
 
-    public void printBIC(int K, int percentage, int bic) {
-        System.out.print("\r                                                                                                                                                   ");
-        if (Globals.getINSTANCE().isMODELSELECTION()) {
-            System.out.print("\r" + time() + " Model selection [K " + K + "]:\t" + percentage + "%\t[BIC: " + (int) bic + "]                 ");
-        } else {
-            System.out.print("\r" + time() + " Model training  [K " + K + "]:\t" + percentage + "%\t[BIC: " + (int) bic + "]                 ");
+    /**
+     * @return the load of the thread pools in debug mode, otherwise nothing
+     */
+    private String threads() {
+        if (!Globals.getINSTANCE().isDEBUG()) {
+            return "";
         }
+        Threading t = Threading.getINSTANCE();
+        return "\t[active: " + t.getActiveThreads() + "/" + t.getThreads() + ", queued: " + t.getQueueDepth() + "]";
     }
 
     public void print(String s) {
@@ -76,16 +74,6 @@ public class StatusUpdate {
         System.out.print("\n" + time() + " " + s);
     }
 
-    public void printPercentage(int K, double read, double Kmin) {
-        if (!Globals.getINSTANCE().isSILENT()) {
-            if (!oldOut.equals(time())) {
-                this.oldOut = time();
-                System.out.print("\r                                                                                                                                                   ");
-                System.out.print("\r" + time() + " Model " + (Globals.getINSTANCE().isMODELSELECTION() ? "selection" : "training ") + " [K " + (int) Kmin + "]:\t" + (Math.round(PERCENTAGE * 1000) / 1000) + "%");
-            }
-        }
-    }
-
     public synchronized void incHamming(int inc) {
         hammingCount += inc * (100d / Globals.getINSTANCE().getHammingMax());
     }
@@ -98,12 +86,4 @@ public class StatusUpdate {
     public String time() {
         return df.format(new Date(System.currentTimeMillis() - start));
     }
-
-    public double getPERCENTAGE() {
-        return PERCENTAGE;
-    }
-
-    public void setPERCENTAGE(double PERCENTAGE) {
-        this.PERCENTAGE = PERCENTAGE;
-    }
 }
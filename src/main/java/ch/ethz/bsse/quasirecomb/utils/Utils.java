@@ -21,18 +21,10 @@ import ch.ethz.bsse.quasirecomb.informationholder.Globals;
 import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
 import ch.ethz.bsse.quasirecomb.informationholder.Read;
 import ch.ethz.bsse.quasirecomb.informationholder.ReadTMP;
-import ch.ethz.bsse.quasirecomb.informationholder.Threading;
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import net.sf.samtools.AbstractBAMFileIndex;
-import net.sf.samtools.BAMIndexMetaData;
-import net.sf.samtools.SAMFileReader;
-import net.sf.samtools.SAMRecord;
 
 /**
  * @author Armin Töpfer (armin.toepfer [at] gmail.com)
@@ -45,31 +37,34 @@ public class Utils extends FastaParser {
         byte[] rs = new byte[readSplit.length];
         int length = readSplit.length;
         for (int i = 0; i < length; i++) {
-            switch ((short) readSplit[i]) {
-                case 65:
-                    rs[i] = 0;
-                    break;
-                case 67:
-                    rs[i] = 1;
-                    break;
-                case 71:
-                    rs[i] = 2;
-                    break;
-                case 84:
-                    rs[i] = 3;
-                    break;
-                case 45:
-                case 78:
-                    rs[i] = 4;
-                    break;
-                default:
-                    System.out.println("Unknown " + (char) ((byte) readSplit[i]) + " " + readSplit[i]);
-                    break;
-            }
+            rs[i] = convertBase(readSplit[i]);
         }
         return rs;
     }
 
+    /**
+     * @return the index of an ASCII base, i.e. 0 to 3 for ACGT and 4 for gaps
+     * and N
+     */
+    public static byte convertBase(byte b) {
+        switch (b) {
+            case 65:
+                return 0;
+            case 67:
+                return 1;
+            case 71:
+                return 2;
+            case 84:
+                return 3;
+            case 45:
+            case 78:
+                return 4;
+            default:
+                System.out.println("Unknown " + (char) b + " " + b);
+                return 0;
+        }
+    }
+
     private static boolean isFastaFormat(String path) {
         try {
             FileInputStream fstream = new FileInputStream(path);
@@ -147,12 +142,9 @@ public class Utils extends FastaParser {
 
     public static void saveOptimum(String save, OptimalResult or) {
         try {
-            FileOutputStream fos = new FileOutputStream(save);
-            try (ObjectOutputStream out = new ObjectOutputStream(fos)) {
-                out.writeObject(or);
-            }
+            OptimumIO.write(save, or, Globals.getINSTANCE().isCOMPRESS_OPTIMUM());
         } catch (IOException ex) {
-            System.out.println("Optimum Java saving\n" + ex.getMessage());
+            System.out.println("Optimum saving\n" + ex.getMessage());
         }
     }
 
@@ -195,7 +187,7 @@ public class Utils extends FastaParser {
         return splitReadsIntoByteArraysPacked(reads);
     }
 
-    public static String reverse(byte[] packed, int length) {
+    public static String reverse(long[] packed, int length) {
         StringBuilder sb = new StringBuilder();
         for (int j = 0; j < length; j++) {
             sb.append(reverse(BitMagic.getPosition(packed, j)));
@@ -286,94 +278,62 @@ public class Utils extends FastaParser {
         }
     }
 
+    /**
+     * Parses and pairs the reads of a BAM file. The records are streamed
+     * through a {@link SFRPipeline} and paired as soon as their batch has been
+     * parsed. With a window, an indexed BAM file is only read where it
+     * overlaps the window.
+     */
     public static Map<String, Read> parseBAMSAMPure(String location) {
-        File bam = new File(location);
-        SAMFileReader sfr = new SAMFileReader(bam);
-        double size = 0;
-//        for (final SAMRecord samRecord : sfr) {
-//            size++;
-//        }
-        AbstractBAMFileIndex index = (AbstractBAMFileIndex) sfr.getIndex();
-        int nRefs = index.getNumberOfReferences();
-        for (int i = 0; i < nRefs; i++) {
-            BAMIndexMetaData meta = index.getMetaData(i);
-            size += meta.getAlignedRecordCount();
-        }
-        sfr.close();
-        sfr = new SAMFileReader(bam);
-        int counter = 0;
-        int x = 0;
-        List<Callable<List<ReadTMP>>> callables = new ArrayList<>();
-        List<SAMRecord> l = new LinkedList<>();
-        int max = (int) Math.ceil(size / Runtime.getRuntime().availableProcessors());
-        for (final SAMRecord samRecord : sfr) {
-            if (x > max) {
-                x = 0;
-                callables.add(new SFRComputing(l));
-                l = new LinkedList<>();
-            }
-            StatusUpdate.getINSTANCE().print("Parsing\t\t" + (Math.round((counter++ / size) * 100)) + "%");
-            l.add(samRecord);
-            x++;
-        }
-        StatusUpdate.getINSTANCE().print("Parsing\t\tcomputing");
-        callables.add(new SFRComputing(l));
-        List<Future<List<ReadTMP>>> readFutures = null;
-        try {
-            readFutures = Threading.getINSTANCE().getExecutor().invokeAll(callables);
-        } catch (InterruptedException ex) {
-            Logger.getLogger(Utils.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        StatusUpdate.getINSTANCE().print("Parsing\t\t           ");
-        StatusUpdate.getINSTANCE().print("Parsing\t\tdone");
-        sfr.close();
-        StatusUpdate.getINSTANCE().println("Start pairing");
+        int[][] windows = Globals.getINSTANCE().isWINDOW()
+                ? new int[][]{{Globals.getINSTANCE().getWINDOW_BEGIN(), Globals.getINSTANCE().getWINDOW_END()}}
+                : new int[0][];
+        SFRPipeline pipeline = new SFRPipeline(new File(location), windows).start();
         StringBuilder sb = new StringBuilder();
-        Map<String, Read> readMap = new HashMap<>(readFutures.size());
-        for (Future<List<ReadTMP>> future : readFutures) {
-            try {
-                List<ReadTMP> readList = future.get();
+        Map<String, Read> readMap = new HashMap<>();
+        try {
+            for (List<ReadTMP> readList = pipeline.next(); readList != null; readList = pipeline.next()) {
                 for (ReadTMP read : readList) {
-                    if (read != null) {
-                        String name = read.name;
-                        int refStart = read.refStart;
-                        byte[] readBases = read.readBases;
-                        double[] quality = read.quality;
-                        boolean hasQuality = read.hasQuality;
-                        boolean[] cigar = read.cigar;
-                        if (readMap.containsKey(name)) {
-                            if (hasQuality) {
-                                readMap.get(name).setPairedEnd(BitMagic.pack(readBases), refStart, refStart + readBases.length, quality, cigar);
+                    String name = read.name;
+                    int refStart = read.refStart;
+                    byte[] readBases = read.readBases;
+                    double[] quality = read.quality;
+                    boolean hasQuality = read.hasQuality;
+                    boolean[] cigar = read.cigar;
+                    if (readMap.containsKey(name)) {
+                        if (hasQuality) {
+                            readMap.get(name).setPairedEnd(BitMagic.encode(readBases), refStart, refStart + readBases.length, quality, cigar);
+                        } else {
+                            readMap.get(name).setPairedEnd(BitMagic.encode(readBases), refStart, refStart + readBases.length, cigar);
+                        }
+                        Read r2 = readMap.get(name);
+                        if (r2.isPaired()) {
+                            sb.append(r2.getCrickEnd() - r2.getWatsonBegin()).append("\n");
+                            if (Globals.getINSTANCE().isUNPAIRED()) {
+                                readMap.put(name + "_R", r2.unpair());
                             } else {
-                                readMap.get(name).setPairedEnd(BitMagic.pack(readBases), refStart, refStart + readBases.length, cigar);
-                            }
-                            Read r2 = readMap.get(name);
-                            if (r2.isPaired()) {
-                                sb.append(r2.getCrickEnd() - r2.getWatsonBegin()).append("\n");
-                                if (Globals.getINSTANCE().isUNPAIRED()) {
+                                if ((r2.getCrickBegin() - r2.getWatsonEnd()) > 2000) {
                                     readMap.put(name + "_R", r2.unpair());
-                                } else {
-                                    if ((r2.getCrickBegin() - r2.getWatsonEnd()) > 2000) {
-                                        readMap.put(name + "_R", r2.unpair());
-                                    }
-//                                    if (r2.getCrickBegin() - r2.getWatsonEnd() < 0) {
-//                                        System.out.println(name + "\t" + r2.getWatsonBegin() + "\t" + r2.getWatsonEnd() + "\t" + r2.getCrickBegin() + "\t" + r2.getCrickEnd());
-//                                    }
                                 }
+//                                if (r2.getCrickBegin() - r2.getWatsonEnd() < 0) {
+//                                    System.out.println(name + "\t" + r2.getWatsonBegin() + "\t" + r2.getWatsonEnd() + "\t" + r2.getCrickBegin() + "\t" + r2.getCrickEnd());
+//                                }
                             }
+                        }
+                    } else {
+                        if (hasQuality) {
+                            readMap.put(name, new Read(BitMagic.encode(readBases), refStart, refStart + readBases.length, quality, cigar));
                         } else {
-                            if (hasQuality) {
-                                readMap.put(name, new Read(BitMagic.pack(readBases), refStart, refStart + readBases.length, quality, cigar));
-                            } else {
-                                readMap.put(name, new Read(BitMagic.pack(readBases), refStart, refStart + readBases.length, cigar));
-                            }
+                            readMap.put(name, new Read(BitMagic.encode(readBases), refStart, refStart + readBases.length, cigar));
                         }
                     }
                 }
-            } catch (InterruptedException | ExecutionException ex) {
-                System.err.println(ex);
             }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Utils.class.getName()).log(Level.SEVERE, null, ex);
         }
+        StatusUpdate.getINSTANCE().print("Parsing\t\t           ");
+        StatusUpdate.getINSTANCE().print("Parsing\t\tdone");
         if (Globals.getINSTANCE().isONLY_PAIRED()) {
             StatusUpdate.getINSTANCE().println("Start remove single-end reads");
             List<String> singleEnd = new LinkedList<>();
@@ -390,7 +350,6 @@ public class Utils extends FastaParser {
         if (Globals.getINSTANCE().isDEBUG()) {
             Utils.saveFile(Globals.getINSTANCE().getSAVEPATH() + "support/fragment.size", sb.toString());
         }
-        readFutures.clear();
         StatusUpdate.getINSTANCE().println("End pairing");
         return readMap;
     }
@@ -421,7 +380,7 @@ public class Utils extends FastaParser {
                 String[] split = head.getKey().split("_")[1].split("-");
                 int begin = Integer.parseInt(split[0]);
                 int end = Integer.parseInt(split[1]);
-                byte[] seq = head.getValue();
+                long[] seq = BitMagic.convert(head.getValue());
                 boolean missing = true;
                 for (Read r : hashing) {
                     if (Arrays.equals(r.getSequence(), seq)
@@ -433,8 +392,8 @@ public class Utils extends FastaParser {
                     }
                 }
                 if (missing) {
-                    boolean[] cigar = new boolean[seq.length];
-                    for (int i = 0; i < seq.length; i++) {
+                    boolean[] cigar = new boolean[BitMagic.getLength(seq)];
+                    for (int i = 0; i < cigar.length; i++) {
                         cigar[i] = true;
                     }
                     hashing.add(new Read(seq, begin, end, cigar));
@@ -444,7 +403,7 @@ public class Utils extends FastaParser {
             Map<Integer, Read> hashMap = new HashMap<>();
             String[] parseFarFile = parseFarFile(path);
             for (String s : parseFarFile) {
-                byte[] packed = BitMagic.splitReadIntoBytes(s);
+                long[] packed = BitMagic.encode(s);
                 boolean[] cigar = new boolean[s.length()];
                 for (int i = 0; i < s.length(); i++) {
                     cigar[i] = true;
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.informationholder;
+
+import ch.ethz.bsse.quasirecomb.utils.BitMagic;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class ReadStoreTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    public ReadStoreTest() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static Read read(Random r, int begin, int length, double[] levels) {
+        byte[] sequence = new byte[length];
+        double[] quality = levels == null ? null : new double[length];
+        boolean[] cigar = new boolean[length];
+        for (int j = 0; j < length; j++) {
+            cigar[j] = r.nextInt(10) > 0;
+            sequence[j] = (byte) (cigar[j] ? r.nextInt(4) : 4);
+            if (levels != null) {
+                quality[j] = levels[r.nextInt(levels.length)];
+            }
+        }
+        if (levels == null) {
+            return new Read(BitMagic.encode(sequence), begin, begin + length, cigar);
+        }
+        return new Read(BitMagic.encode(sequence), begin, begin + length, quality, cigar);
+    }
+
+    private static Read[] reads(double[] levels) {
+        Random r = new Random(3);
+        Read[] reads = new Read[200];
+        for (int i = 0; i < reads.length; i++) {
+            int begin = r.nextInt(100);
+            reads[i] = read(r, begin, 1 + r.nextInt(50), i % 7 == 0 ? null : levels);
+            if (i % 3 == 0) {
+                Read mate = read(r, begin + 30 + r.nextInt(40), 1 + r.nextInt(50), i % 7 == 0 ? null : levels);
+                reads[i].setPairedEnd(mate.getSequence(), mate.getWatsonBegin(), mate.getWatsonEnd(), mate.getWatsonQuality(), mate.getWatsonCigar());
+            }
+            reads[i].setCount(1 + r.nextInt(5));
+        }
+        return reads;
+    }
+
+    private static void assertView(Read expected, Read actual, double delta) {
+        assertEquals(expected.getWatsonBegin(), actual.getWatsonBegin());
+        assertEquals(expected.getWatsonEnd(), actual.getWatsonEnd());
+        assertEquals(expected.getCrickBegin(), actual.getCrickBegin());
+        assertEquals(expected.getCrickEnd(), actual.getCrickEnd());
+        assertEquals(expected.getBegin(), actual.getBegin());
+        assertEquals(expected.getEnd(), actual.getEnd());
+        assertEquals(expected.getLength(), actual.getLength());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.isPaired(), actual.isPaired());
+        assertEquals(expected.isMerged(), actual.isMerged());
+        assertEquals(expected.getInsertion(), actual.getInsertion());
+        assertArrayEquals(expected.getSequence(), actual.getSequence());
+        assertArrayEquals(expected.getCrickSequence(), actual.getCrickSequence());
+        assertTrue(Arrays.equals(expected.getWatsonCigar(), actual.getWatsonCigar()));
+        for (int j = 0; j < expected.getLength(); j++) {
+            assertEquals(expected.getPosition(j), actual.getPosition(j));
+            assertEquals(expected.isHit(j), actual.isHit(j));
+            if (expected.isHit(j)) {
+                assertEquals(expected.getBase(j), actual.getBase(j));
+                assertEquals(expected.getCigar(j), actual.getCigar(j));
+                assertEquals(expected.getQuality(j), actual.getQuality(j), delta);
+            }
+            assertEquals(expected.getBaseSilent(j), actual.getBaseSilent(j));
+        }
+    }
+
+    /**
+     * Test of compact, of class ReadStore.
+     */
+    @Test
+    public void testCompact() {
+        System.out.print("compact:\t");
+        double[] levels = {0d, 0.01, 0.79432823472, 0.9, 0.999, 1d};
+        Read[] reads = reads(levels);
+        Read[] views = ReadStore.compact(reads);
+        assertEquals(reads.length, views.length);
+        for (int i = 0; i < reads.length; i++) {
+            assertView(reads[i], views[i], 0d);
+            assertEquals(reads[i].hashCode(), views[i].hashCode());
+        }
+        views[0].incCount();
+        assertEquals(reads[0].getCount() + 1, views[0].getCount());
+        System.out.println("done");
+    }
+
+    /**
+     * More than 256 distinct qualities are rounded to half PHRED steps.
+     */
+    @Test
+    public void testQuantised() {
+        System.out.print("quantised:\t");
+        double[] levels = new double[1000];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = 0.5 + 0.4999 * i / levels.length;
+        }
+        Read[] reads = reads(levels);
+        Read[] views = ReadStore.compact(reads);
+        for (int i = 0; i < reads.length; i++) {
+            assertView(reads[i], views[i], 0.03);
+        }
+        System.out.println("done");
+    }
+}
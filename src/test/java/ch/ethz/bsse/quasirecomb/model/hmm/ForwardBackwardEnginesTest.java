@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.utils.BitMagic;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class ForwardBackwardEnginesTest {
+
+    private static final int L = 80;
+    private static final int K = 3;
+    private static final int n = 5;
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    public ForwardBackwardEnginesTest() {
+    }
+
+    @Before
+    public void setUp() {
+        Globals.getINSTANCE().setSTORAGE(true);
+        Globals.getINSTANCE().setSTEPS(10);
+        Globals.getINSTANCE().setALPHA_H(1e-4);
+        Globals.getINSTANCE().setALPHA_Z(1e-4);
+        Globals.getINSTANCE().setMULT_MU(10);
+        Globals.getINSTANCE().setMULT_RHO(100);
+        Globals.getINSTANCE().setINTERPOLATE_MU(1);
+        Globals.getINSTANCE().setINTERPOLATE_RHO(1);
+        Globals.getINSTANCE().setSAVEPATH(System.getProperty("java.io.tmpdir") + "/");
+    }
+
+    @After
+    public void tearDown() {
+        Globals.getINSTANCE().setNO_RECOMB(false);
+    }
+
+    /**
+     * @param deletions whether some reads have a deletion, i.e. gaps that are
+     * not covered by the CIGAR
+     */
+    private static Read segment(java.util.Random rnd, int begin, int length, boolean quality, boolean deletions) {
+        byte[] sequence = new byte[length];
+        double[] q = new double[length];
+        boolean[] cigar = new boolean[length];
+        for (int j = 0; j < length; j++) {
+            sequence[j] = (byte) rnd.nextInt(n - 1);
+            q[j] = quality ? 0.9 + rnd.nextDouble() / 10 : 1;
+            cigar[j] = true;
+        }
+        if (deletions) {
+            int from = 1 + rnd.nextInt(length - 2);
+            int to = Math.min(length - 1, from + 1 + rnd.nextInt(6));
+            for (int j = from; j < to; j++) {
+                sequence[j] = 4;
+                q[j] = (to - from) % 3 == 0 ? 0.79432823472 : 0.01;
+                cigar[j] = false;
+            }
+        }
+        return new Read(BitMagic.encode(sequence), begin, begin + length, q, cigar);
+    }
+
+    /**
+     * Single reads and pairs with an insert between the mates, every third
+     * segment with a deletion.
+     */
+    private Read[] reads(boolean quality) {
+        java.util.Random rnd = new java.util.Random(7);
+        Read[] reads = new Read[60];
+        for (int i = 0; i < reads.length; i++) {
+            if (i % 2 == 0) {
+                int length = 10 + rnd.nextInt(20);
+                int gap = 1 + rnd.nextInt(10);
+                int crickLength = 10 + rnd.nextInt(15);
+                int begin = rnd.nextInt(L - length - gap - crickLength);
+                reads[i] = segment(rnd, begin, length, quality, i % 3 == 0);
+                Read crick = segment(rnd, begin + length + gap, crickLength, quality, i % 4 == 0);
+                reads[i].setPairedEnd(crick.getSequence(), crick.getWatsonBegin(), crick.getWatsonEnd(), crick.getWatsonQuality(), crick.getWatsonCigar());
+                assertTrue(reads[i].isPaired());
+            } else {
+                int length = 10 + rnd.nextInt(30);
+                reads[i] = segment(rnd, rnd.nextInt(L - length), length, quality, i % 3 == 0);
+            }
+            reads[i].setCount(1 + rnd.nextInt(3));
+        }
+        return reads;
+    }
+
+    private void compare(boolean quality) {
+        Globals.getINSTANCE().setNO_RECOMB(false);
+        Read[] reads = reads(quality);
+        Globals.getINSTANCE().setTAU_OMEGA(reads, L);
+        JHMM jhmm = new JHMM(reads, reads.length, L, K, n, 0.001, K, 1);
+        double diff = ForwardBackwardEngines.compare(jhmm, reads, new ReferenceEngine(), new VectorizedEngine());
+        assertTrue("relative difference " + diff, diff < ForwardBackwardEngines.TOLERANCE);
+    }
+
+    /**
+     * Test of compare method, of class ForwardBackwardEngines. Without
+     * recombination both engines run the same kernel, thus only the
+     * recombination model is compared.
+     */
+    @Test
+    public void testCompare() {
+        System.out.print("compare:\t");
+        compare(false);
+        compare(true);
+        System.out.println("done");
+    }
+
+    /**
+     * Test of get method, of class ForwardBackwardEngines.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetUnknown() {
+        System.out.println("get:\tdone");
+        ForwardBackwardEngines.get("unknown");
+    }
+}
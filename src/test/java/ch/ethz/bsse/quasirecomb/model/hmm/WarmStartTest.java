@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.utils.BitMagic;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class WarmStartTest {
+
+    private static final int L = 60;
+    private static final int n = 5;
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    public WarmStartTest() {
+    }
+
+    @Before
+    public void setUp() {
+        Globals.getINSTANCE().setSTORAGE(true);
+        Globals.getINSTANCE().setSTEPS(10);
+        Globals.getINSTANCE().setALPHA_H(1e-4);
+        Globals.getINSTANCE().setALPHA_Z(1e-4);
+        Globals.getINSTANCE().setMULT_MU(10);
+        Globals.getINSTANCE().setMULT_RHO(100);
+        Globals.getINSTANCE().setINTERPOLATE_MU(1);
+        Globals.getINSTANCE().setINTERPOLATE_RHO(1);
+        Globals.getINSTANCE().setSAVEPATH(System.getProperty("java.io.tmpdir") + "/");
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Reads of two haplotypes, which differ at every sixth position, with
+     * some sequencing errors.
+     */
+    private Read[] reads() {
+        java.util.Random rnd = new java.util.Random(11);
+        byte[][] haplotypes = new byte[2][L];
+        for (int j = 0; j < L; j++) {
+            haplotypes[0][j] = (byte) rnd.nextInt(n - 1);
+            haplotypes[1][j] = j % 6 == 0 ? (byte) ((haplotypes[0][j] + 1) % (n - 1)) : haplotypes[0][j];
+        }
+        Read[] reads = new Read[80];
+        for (int i = 0; i < reads.length; i++) {
+            byte[] haplotype = haplotypes[i % 3 == 0 ? 1 : 0];
+            int length = 15 + rnd.nextInt(20);
+            int begin = rnd.nextInt(L - length);
+            byte[] sequence = new byte[length];
+            double[] q = new double[length];
+            boolean[] cigar = new boolean[length];
+            for (int j = 0; j < length; j++) {
+                sequence[j] = rnd.nextDouble() < 0.01 ? (byte) rnd.nextInt(n - 1) : haplotype[begin + j];
+                q[j] = 1;
+                cigar[j] = true;
+            }
+            reads[i] = new Read(BitMagic.encode(sequence), begin, begin + length, q, cigar);
+            reads[i].setCount(1 + rnd.nextInt(3));
+        }
+        return reads;
+    }
+
+    /**
+     * The BIC of a warm-started restart has to be the log-likelihood of one
+     * E-step over its returned optimum, penalized by the free parameters of
+     * this optimum.
+     */
+    @Test
+    public void testBIC() {
+        System.out.print("bic:\t");
+        Read[] reads = reads();
+        int N = 0;
+        for (Read r : reads) {
+            N += r.getCount();
+        }
+        Globals.getINSTANCE().setTAU_OMEGA(reads, L);
+        SingleEM single = new SingleEM(N, 1, L, n, reads, 1e-4, 0, new RunState());
+        for (long seed = 1; seed <= 3; seed++) {
+            SingleEM warm = new SingleEM(WarmStart.split(single.getOptimalResult(), seed), N, reads, 1e-4, (int) seed, new RunState());
+            OptimalResult or = warm.getOptimalResult();
+            JHMM check = new JHMM(reads, N, L, or.getK(), n, or.getEps(), or.getRho(), or.getPi(), or.getMu(), or.getK(), 1);
+            assertEquals(check.getLoglikelihood(), or.getLlh(), 1e-9 * Math.abs(or.getLlh()));
+            double bic = check.getLoglikelihood() - warm.freeParameters(new JHMMParams(L, or.getK(), n, or.getRho(), or.getPi(), or.getMu(), or.getEps())) / 2d * Math.log(N);
+            assertEquals(bic, or.getBIC(), 1e-9 * Math.abs(bic));
+        }
+        System.out.println("done");
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.model.hmm.parallel;
+
+import ch.ethz.bsse.quasirecomb.informationholder.Globals;
+import ch.ethz.bsse.quasirecomb.informationholder.Read;
+import ch.ethz.bsse.quasirecomb.utils.BitMagic;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class PartitionPlanTest {
+
+    private static final int K = 5;
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    public PartitionPlanTest() {
+    }
+
+    @Before
+    public void setUp() {
+        Globals.getINSTANCE().setSTEPS(2);
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private Read[] reads() {
+        java.util.Random rnd = new java.util.Random(3);
+        Read[] reads = new Read[5000];
+        for (int i = 0; i < reads.length; i++) {
+            //mixture of short single reads and long merged pairs
+            int length = i % 10 == 0 ? 500 + rnd.nextInt(500) : 50 + rnd.nextInt(50);
+            byte[] sequence = new byte[length];
+            boolean[] cigar = new boolean[length];
+            for (int j = 0; j < length; j++) {
+                sequence[j] = (byte) rnd.nextInt(4);
+                cigar[j] = true;
+            }
+            reads[i] = new Read(BitMagic.encode(sequence), 0, length, cigar);
+            for (int c = rnd.nextInt(3); c > 0; c--) {
+                reads[i].incCount();
+            }
+        }
+        return reads;
+    }
+
+    @Test
+    public void testPartition() {
+        Read[] reads = reads();
+        PartitionPlan plan = new PartitionPlan(reads, K);
+        assertTrue(plan.size() > 1);
+
+        double total = 0d;
+        double maxRead = 0d;
+        for (Read r : reads) {
+            total += PartitionPlan.cost(r, K);
+            maxRead = Math.max(maxRead, PartitionPlan.cost(r, K));
+        }
+        int i = 0;
+        double max = 0d;
+        for (int c = 0; c < plan.size(); c++) {
+            for (Read r : plan.getChunk(c)) {
+                assertSame(reads[i++], r);
+            }
+            max = Math.max(max, plan.getCost(c));
+        }
+        assertEquals(reads.length, i);
+        assertTrue(max <= total / plan.size() + maxRead);
+        System.out.println("testPartition:\tdone");
+    }
+
+    @Test
+    public void testStripes() {
+        Read[] reads = reads();
+        PartitionPlan plan = new PartitionPlan(reads, K);
+        assertTrue(plan.getStripes() >= 1);
+        assertTrue(plan.getStripes() <= Math.min(plan.size(), Globals.getINSTANCE().getFjPool().getParallelism()));
+
+        int[] seen = new int[plan.size()];
+        for (int s = 0; s < plan.getStripes(); s++) {
+            int last = -1;
+            for (int c : plan.getStripe(s)) {
+                assertTrue(c > last);
+                last = c;
+                seen[c]++;
+            }
+        }
+        for (int c = 0; c < seen.length; c++) {
+            assertEquals(1, seen[c]);
+        }
+        System.out.println("testStripes:\tdone");
+    }
+}
@@ -4,6 +4,8 @@
  */
 package ch.ethz.bsse.quasirecomb.utils;
 
+import java.util.Arrays;
+import java.util.Random;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -101,4 +103,43 @@ public class BitMagicTest {
         // TODO review the generated test code and remove the default call to fail.
 //        fail("The test case is a prototype.");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test of encode and decode, of class BitMagic.
+     */
+    @Test
+    public void testEncode() {
+        System.out.print("encode:\t\t");
+        Random r = new Random(5);
+        for (int l = 0; l < 100; l++) {
+            byte[] s = new byte[l];
+            for (int i = 0; i < l; i++) {
+                s[i] = (byte) r.nextInt(5);
+            }
+            long[] packed = BitMagic.encode(s);
+            assertEquals(l, BitMagic.getLength(packed));
+            assertArrayEquals(s, BitMagic.decode(packed));
+            for (int i = 0; i < l; i++) {
+                assertEquals(s[i], BitMagic.getPosition(packed, i));
+            }
+            int from = l == 0 ? 0 : r.nextInt(l);
+            byte[] span = new byte[l - from + 1];
+            BitMagic.decode(packed, from, l, span, 1);
+            assertArrayEquals(Arrays.copyOfRange(s, from, l), Arrays.copyOfRange(span, 1, span.length));
+        }
+        System.out.println("done");
+    }
+
+    /**
+     * Test of convert, of class BitMagic.
+     */
+    @Test
+    public void testConvert() {
+        System.out.print("convert:\t");
+        String s = "ACGT-TGCA-AACCGGTT--ACGTACGT-";
+        long[] packed = BitMagic.convert(BitMagic.splitReadIntoBytes(s));
+        assertArrayEquals(BitMagic.encode(s), packed);
+        assertEquals(BitMagic.toString(BitMagic.splitReadIntoBytes(s)), BitMagic.toString(packed));
+        System.out.println("done");
+    }
+}
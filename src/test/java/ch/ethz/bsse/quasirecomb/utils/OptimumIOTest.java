@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.utils;
+
+import ch.ethz.bsse.quasirecomb.informationholder.OptimalResult;
+import ch.ethz.bsse.quasirecomb.informationholder.TauOmega;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class OptimumIOTest {
+
+    private File file;
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    public OptimumIOTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("OptimumIOTest", ".optimum");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private OptimalResult result() {
+        Random r = new Random(7);
+        int K = 3, L = 20, n = 5;
+        double[][][] rho = new double[L - 1][K][K];
+        double[][] pi = new double[L][K];
+        double[][][] mu = new double[L][K][n];
+        double[] eps = new double[L];
+        double[][] snv = new double[L][n];
+        for (int j = 0; j < L; j++) {
+            for (int k = 0; k < K; k++) {
+                if (j < L - 1) {
+                    for (int l = 0; l < K; l++) {
+                        rho[j][k][l] = r.nextDouble();
+                    }
+                }
+                pi[j][k] = r.nextDouble();
+                for (int v = 0; v < n; v++) {
+                    mu[j][k][v] = r.nextDouble();
+                }
+            }
+            eps[j] = r.nextDouble();
+            for (int v = 0; v < n; v++) {
+                snv[j][v] = r.nextDouble();
+            }
+        }
+        Map<Integer, Map<Integer, Double>> tauWatson = new HashMap<>();
+        Map<Integer, Double> lengths = new HashMap<>();
+        lengths.put(10, .25);
+        lengths.put(12, .75);
+        tauWatson.put(0, lengths);
+        Map<Integer, Map<Integer, Double>> omegaWatson = new HashMap<>();
+        Map<Integer, Map<Integer, Double>> tauCrick = new HashMap<>();
+        Map<Integer, Double> crick = new HashMap<>();
+        crick.put(5, 1d);
+        tauCrick.put(15, crick);
+        int[] coverage = new int[L];
+        for (int j = 0; j < L; j++) {
+            coverage[j] = r.nextInt(100);
+        }
+        TauOmega tauOmega = new TauOmega(tauWatson, omegaWatson, tauCrick, coverage);
+        return new OptimalResult(100, K, L, n, rho, pi, mu, -1234.5, -2345.6, eps, 4, tauOmega, snv, 17);
+    }
+
+    private void assertSame(OptimalResult expected, OptimalResult actual) {
+        assertEquals(expected.getN(), actual.getN());
+        assertEquals(expected.getK(), actual.getK());
+        assertEquals(expected.getL(), actual.getL());
+        assertEquals(expected.getn(), actual.getn());
+        assertEquals(expected.getRestarts(), actual.getRestarts());
+        assertEquals(expected.getStart(), actual.getStart());
+        assertEquals(expected.getLlh(), actual.getLlh(), 0d);
+        assertEquals(expected.getBIC(), actual.getBIC(), 0d);
+        assertArrayEquals(expected.getEps(), actual.getEps(), 0d);
+        for (int j = 0; j < expected.getL(); j++) {
+            assertArrayEquals(expected.getPi()[j], actual.getPi()[j], 0d);
+            assertArrayEquals(expected.getSnv()[j], actual.getSnv()[j], 0d);
+            for (int k = 0; k < expected.getK(); k++) {
+                assertArrayEquals(expected.getMu()[j][k], actual.getMu()[j][k], 0d);
+                if (j < expected.getL() - 1) {
+                    assertArrayEquals(expected.getRho()[j][k], actual.getRho()[j][k], 0d);
+                }
+            }
+        }
+        assertArrayEquals(expected.getTauOmega().getCoverage(), actual.getTauOmega().getCoverage());
+        assertEquals(expected.getTauOmega().getTauWatsonMap(), actual.getTauOmega().getTauWatsonMap());
+        assertEquals(expected.getTauOmega().getOmegaWatsonMap(), actual.getTauOmega().getOmegaWatsonMap());
+        assertEquals(expected.getTauOmega().getTauCrickMap(), actual.getTauOmega().getTauCrickMap());
+        assertEquals(expected.getTauOmega().isPaired(), actual.getTauOmega().isPaired());
+    }
+
+    /**
+     * Test of write and read, of class OptimumIO.
+     */
+    @Test
+    public void testMapped() throws Exception {
+        System.out.print("mapped:\t");
+        OptimalResult or = result();
+        OptimumIO.write(file.getPath(), or, false);
+        assertSame(or, OptimumIO.read(file.getPath()));
+        System.out.println("done");
+    }
+
+    /**
+     * Test of write and read with compression, of class OptimumIO.
+     */
+    @Test
+    public void testCompressed() throws Exception {
+        System.out.print("compressed:\t");
+        OptimalResult or = result();
+        OptimumIO.write(file.getPath(), or, true);
+        assertSame(or, OptimumIO.read(file.getPath()));
+        System.out.println("done");
+    }
+
+    /**
+     * Test of reading a serialized OptimalResult, of class OptimumIO.
+     */
+    @Test
+    public void testLegacy() throws Exception {
+        System.out.print("legacy:\t");
+        OptimalResult or = result();
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject(or);
+        }
+        assertSame(or, OptimumIO.read(file.getPath()));
+        System.out.println("done");
+    }
+
+    /**
+     * A result read from the binary format is serialized with all sections.
+     */
+    @Test
+    public void testSerializeMapped() throws Exception {
+        System.out.print("serializeMapped:\t");
+        OptimalResult or = result();
+        OptimumIO.write(file.getPath(), or, false);
+        OptimalResult mapped = OptimumIO.read(file.getPath());
+        File serialized = File.createTempFile("OptimumIOTest", ".ser");
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(serialized))) {
+            out.writeObject(mapped);
+        }
+        OptimalResult legacy = OptimumIO.readLegacy(serialized.getPath());
+        serialized.delete();
+        assertEquals(OptimalResult.class, legacy.getClass());
+        assertSame(or, legacy);
+        System.out.println("done");
+    }
+}
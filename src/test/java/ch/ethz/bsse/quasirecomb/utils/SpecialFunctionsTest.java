@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2011-2013 Armin Töpfer
+ *
+ * This file is part of QuasiRecomb.
+ *
+ * QuasiRecomb is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * QuasiRecomb is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * QuasiRecomb. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ethz.bsse.quasirecomb.utils;
+
+import cc.mallet.types.Dirichlet;
+import ch.ethz.bsse.quasirecomb.utils.SpecialFunctions.ExpDigammaMemo;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Armin Töpfer (armin.toepfer [at] gmail.com)
+ */
+public class SpecialFunctionsTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    public SpecialFunctionsTest() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Arguments from 1e-8 to 1e6, including the boundaries of the small
+     * argument and the shift region.
+     */
+    private double[] arguments() {
+        double[] z = new double[14 * 100 + 6];
+        for (int i = 0; i < 14 * 100; i++) {
+            z[i] = Math.pow(10, -8 + i / 100d);
+        }
+        z[1400] = Dirichlet.DIGAMMA_SMALL;
+        z[1401] = Math.nextAfter(Dirichlet.DIGAMMA_SMALL, 0);
+        z[1402] = Dirichlet.DIGAMMA_LARGE;
+        z[1403] = Math.nextAfter(Dirichlet.DIGAMMA_LARGE, 0);
+        z[1404] = 1e-4;
+        z[1405] = 1000.0001;
+        return z;
+    }
+
+    /**
+     * Test of digamma method, of class SpecialFunctions.
+     */
+    @Test
+    public void testDigamma() {
+        System.out.print("digamma:\t");
+        for (double z : arguments()) {
+            double expected = Dirichlet.digamma(z);
+            assertEquals("z=" + z, expected, SpecialFunctions.digamma(z), Math.abs(expected) * 1e-14 + 1e-14);
+        }
+        System.out.println("done");
+    }
+
+    /**
+     * Test of expDigamma method, of class SpecialFunctions.
+     */
+    @Test
+    public void testExpDigamma() {
+        System.out.print("expDigamma:\t");
+        for (double z : arguments()) {
+            double expected = Math.exp(Dirichlet.digamma(z));
+            assertEquals("z=" + z, expected, SpecialFunctions.expDigamma(z), Math.max(expected * SpecialFunctions.TOLERANCE, Double.MIN_NORMAL));
+        }
+        assertEquals(0d, SpecialFunctions.expDigamma(0d), 0d);
+        System.out.println("done");
+    }
+
+    /**
+     * Test of the array and memo variants of expDigamma, of class
+     * SpecialFunctions.
+     */
+    @Test
+    public void testExpDigammaArray() {
+        System.out.print("expDigammaArray:\t");
+        double[] z = arguments();
+        double[] out = new double[z.length];
+        SpecialFunctions.expDigamma(z, out, 0, z.length, null);
+        ExpDigammaMemo memo = new ExpDigammaMemo(1e-4, 1e-3, Dirichlet.DIGAMMA_LARGE);
+        double[] memoized = z.clone();
+        SpecialFunctions.expDigamma(memoized, memoized, 0, z.length, memo);
+        for (int i = 0; i < z.length; i++) {
+            assertEquals(SpecialFunctions.expDigamma(z[i]), out[i], 0d);
+            assertEquals(SpecialFunctions.expDigamma(z[i]), memoized[i], 0d);
+        }
+        System.out.println("done");
+    }
+}